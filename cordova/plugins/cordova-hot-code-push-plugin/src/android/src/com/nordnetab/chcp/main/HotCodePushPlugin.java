@@ -1,5 +1,6 @@
 package com.nordnetab.chcp.main;
 
+import android.net.Uri;
 import android.os.Handler;
 import android.text.TextUtils;
 import android.util.Log;
@@ -19,6 +20,7 @@ import com.nordnetab.chcp.main.events.UpdateIsReadyToInstallEvent;
 import com.nordnetab.chcp.main.js.JSAction;
 import com.nordnetab.chcp.main.js.PluginResultHelper;
 import com.nordnetab.chcp.main.model.ChcpError;
+import com.nordnetab.chcp.main.model.LayeredRelease;
 import com.nordnetab.chcp.main.model.PluginFilesStructure;
 import com.nordnetab.chcp.main.model.UpdateTime;
 import com.nordnetab.chcp.main.storage.ApplicationConfigStorage;
@@ -28,7 +30,6 @@ import com.nordnetab.chcp.main.storage.PluginInternalPreferencesStorage;
 import com.nordnetab.chcp.main.updater.UpdatesInstaller;
 import com.nordnetab.chcp.main.updater.UpdatesLoader;
 import com.nordnetab.chcp.main.utils.AssetsHelper;
-import com.nordnetab.chcp.main.utils.CleanUpHelper;
 import com.nordnetab.chcp.main.utils.Paths;
 import com.nordnetab.chcp.main.utils.VersionHelper;
 import com.nordnetab.chcp.main.view.AppUpdateRequestDialog;
@@ -65,6 +66,7 @@ public class HotCodePushPlugin extends CordovaPlugin {
     private IObjectPreferenceStorage<PluginInternalPreferences> pluginInternalPrefsStorage;
     private ChcpXmlConfig chcpXmlConfig;
     private PluginFilesStructure fileStructure;
+    private volatile LayeredRelease currentRelease;
 
     private CallbackContext installJsCallback;
     private CallbackContext jsDefaultCallback;
@@ -87,7 +89,7 @@ public class HotCodePushPlugin extends CordovaPlugin {
 
         // clean up file system
         if (!TextUtils.isEmpty(pluginInternalPrefs.getCurrentReleaseVersionName())) {
-            CleanUpHelper.removeReleaseFolders(cordova.getActivity(),
+            UpdatesInstaller.removeReleaseFolders(cordova.getActivity(),
                     new String[]{pluginInternalPrefs.getCurrentReleaseVersionName(),
                             pluginInternalPrefs.getPreviousReleaseVersionName(),
                             pluginInternalPrefs.getReadyForInstallationReleaseVersionName()
@@ -97,7 +99,38 @@ public class HotCodePushPlugin extends CordovaPlugin {
 
         handler = new Handler();
         fileStructure = new PluginFilesStructure(cordova.getActivity(), pluginInternalPrefs.getCurrentReleaseVersionName());
+        currentRelease = LayeredRelease.load(cordova.getActivity(), pluginInternalPrefs.getCurrentReleaseVersionName());
         appConfigStorage = new ApplicationConfigStorage();
+
+        // releases with too many layers are merged, so their parents could be removed
+        UpdatesInstaller.compactRelease(cordova.getActivity(), pluginInternalPrefs.getCurrentReleaseVersionName());
+    }
+
+    /**
+     * Resolve files of the layered release.
+     * Web content is always loaded from the www folder of the current release; files, that are not stored in it,
+     * are taken from the layers of the parent releases.
+     *
+     * @param uri requested uri
+     * @return uri of the file in the parent layer; <code>null</code> - if uri is not changed
+     * @see LayeredRelease
+     */
+    @Override
+    public Uri remapUri(Uri uri) {
+        final LayeredRelease release = currentRelease;
+        if (release == null || !release.isLayered() || !"file".equals(uri.getScheme())) {
+            return null;
+        }
+
+        final String path = uri.getPath();
+        final String wwwFolder = release.getWwwFolder() + "/";
+        if (path == null || !path.startsWith(wwwFolder) || path.contains("..") || new File(path).exists()) {
+            return null;
+        }
+
+        final File file = release.resolve(path.substring(wwwFolder.length()));
+
+        return file != null ? Uri.fromFile(file) : null;
     }
 
     @Override
@@ -400,7 +433,9 @@ public class HotCodePushPlugin extends CordovaPlugin {
             return;
         }
 
-        ChcpError error = UpdatesInstaller.install(cordova.getActivity(), pluginInternalPrefs.getReadyForInstallationReleaseVersionName(), pluginInternalPrefs.getCurrentReleaseVersionName());
+        ChcpError error = UpdatesInstaller.install(cordova.getActivity(), pluginInternalPrefs.getReadyForInstallationReleaseVersionName(),
+                pluginInternalPrefs.getCurrentReleaseVersionName(), chcpXmlConfig.isParanoidVerificationRequired(),
+                chcpXmlConfig.isLayeredReleasesAllowed());
         if (error != ChcpError.NONE) {
             if (jsCallback != null) {
                 PluginResult errorResult = PluginResultHelper.createPluginResult(UpdateInstallationErrorEvent.EVENT_NAME, null, error);
@@ -429,7 +464,13 @@ public class HotCodePushPlugin extends CordovaPlugin {
         boolean isWwwFolderInstalled = pluginInternalPrefs.isWwwFolderInstalled();
         boolean isApplicationHasBeenUpdated = isApplicationHasBeenUpdated();
 
-        return isWwwFolderExists && isWwwFolderInstalled && !isApplicationHasBeenUpdated;
+        // layered release without it's parent has lost some files, so it is replaced by the bundled content
+        boolean isReleaseComplete = currentRelease.isComplete();
+        if (!isReleaseComplete) {
+            Log.d("CHCP", "Current release is incomplete, reinstalling www folder from assets");
+        }
+
+        return isWwwFolderExists && isWwwFolderInstalled && !isApplicationHasBeenUpdated && isReleaseComplete;
     }
 
     /**
@@ -462,6 +503,10 @@ public class HotCodePushPlugin extends CordovaPlugin {
             pluginInternalPrefsStorage.storeInPreference(pluginInternalPrefs);
         }
 
+        // assets contain all the files, so release doesn't depend on the others anymore
+        LayeredRelease.removeLayer(fileStructure);
+        currentRelease = LayeredRelease.load(cordova.getActivity(), pluginInternalPrefs.getCurrentReleaseVersionName());
+
         AssetsHelper.copyAssetDirectoryToAppDirectory(cordova.getActivity().getAssets(), WWW_FOLDER, fileStructure.getWwwFolder());
     }
 
@@ -484,15 +529,14 @@ public class HotCodePushPlugin extends CordovaPlugin {
             }
         }
 
-        // make sure, that index page exists
-        String external = Paths.get(fileStructure.getWwwFolder(), strippedIndexPage);
-        if (!new File(external).exists()) {
+        // make sure, that index page exists in the current release or it's layers
+        if (currentRelease.resolve(strippedIndexPage) == null) {
             Log.d("CHCP", "External starting page not found. Aborting page change.");
             return;
         }
 
         // load index page from the external source
-        external = Paths.get(fileStructure.getWwwFolder(), indexPage);
+        final String external = Paths.get(fileStructure.getWwwFolder(), indexPage);
         webView.loadUrlIntoView(FILE_PREFIX + external, false);
 
         Log.d("CHCP", "Loading external page: " + external);
@@ -684,9 +728,13 @@ public class HotCodePushPlugin extends CordovaPlugin {
         pluginInternalPrefs.setPreviousReleaseVersionName(pluginInternalPrefs.getCurrentReleaseVersionName());
         pluginInternalPrefs.setCurrentReleaseVersionName(newContentConfig.getReleaseVersion());
         pluginInternalPrefs.setReadyForInstallationReleaseVersionName("");
-        pluginInternalPrefsStorage.storeInPreference(pluginInternalPrefs);
+        if (pluginInternalPrefsStorage.storeInPreference(pluginInternalPrefs)) {
+            UpdatesInstaller.commitInstallation(cordova.getActivity(), newContentConfig.getReleaseVersion());
+        }
 
         fileStructure = new PluginFilesStructure(cordova.getActivity(), newContentConfig.getReleaseVersion());
+        currentRelease = LayeredRelease.load(cordova.getActivity(), newContentConfig.getReleaseVersion());
+        UpdatesInstaller.compactRelease(cordova.getActivity(), newContentConfig.getReleaseVersion());
 
         final PluginResult jsResult = PluginResultHelper.pluginResultFromEvent(event);
 
@@ -767,7 +815,8 @@ public class HotCodePushPlugin extends CordovaPlugin {
      */
     private void rollbackIfCorrupted(ChcpError error) {
         if (error != ChcpError.LOCAL_VERSION_OF_APPLICATION_CONFIG_NOT_FOUND &&
-                error != ChcpError.LOCAL_VERSION_OF_MANIFEST_NOT_FOUND) {
+                error != ChcpError.LOCAL_VERSION_OF_MANIFEST_NOT_FOUND &&
+                error != ChcpError.LOCAL_VERSION_OF_RELEASE_IS_INCOMPLETE) {
             return;
         }
 
@@ -790,6 +839,7 @@ public class HotCodePushPlugin extends CordovaPlugin {
         pluginInternalPrefsStorage.storeInPreference(pluginInternalPrefs);
 
         fileStructure.switchToRelease(pluginInternalPrefs.getCurrentReleaseVersionName());
+        currentRelease = LayeredRelease.load(cordova.getActivity(), pluginInternalPrefs.getCurrentReleaseVersionName());
 
         handler.post(new Runnable() {
             @Override
@@ -0,0 +1,428 @@
+package com.nordnetab.chcp.main.config;
+
+import com.nordnetab.chcp.main.model.CompactFileList;
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.model.ManifestFileReader;
+import com.nordnetab.chcp.main.utils.Hex;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compact binary representation of the content manifest, that is used to store it on the device.
+ * <p/>
+ * Files are sorted by path. Paths are prefix-compressed: each entry stores only the length of the prefix,
+ * that it shares with the previous path, and the rest of it. Every {@link #RESTART_INTERVAL} entries
+ * the full path is stored, so lookup can start from there. Hashes are stored as raw bytes in a separate table.
+ * All numbers are big-endian. Format:
+ * <pre>
+ * header:     magic "CHCPMNF1" (8 bytes), entries count, digest length, restart interval,
+ *             restart points count, path table length (int32 each)
+ * restarts:   offset of the restart entry in the path table (int32 each)
+ * digests:    entries count * digest length bytes
+ * path table: shared prefix length (varint), suffix length (varint), suffix (UTF-8) for each entry
+ * </pre>
+ * File is memory-mapped when it is opened, so only the header is read right away. Lookup by path takes
+ * O(log n) and doesn't create {@link ManifestFile} objects.
+ *
+ * @see ContentManifest
+ */
+public class BinaryManifest {
+
+    /**
+     * Number of entries between two full (not compressed) paths.
+     */
+    public static final int RESTART_INTERVAL = 16;
+
+    private static final byte[] MAGIC = {'C', 'H', 'C', 'P', 'M', 'N', 'F', '1'};
+    private static final int HEADER_SIZE = MAGIC.length + 5 * 4;
+
+    private final ByteBuffer buffer;
+    private final int entriesCount;
+    private final int digestLength;
+    private final int restartInterval;
+    private final int restartsCount;
+    private final int restartsOffset;
+    private final int digestsOffset;
+    private final int pathTableOffset;
+
+    // region Writing
+
+    /**
+     * Write list of files in binary format.
+     * Data is written into the temporary file, which then replaces the old one: mapped version of the old file stays valid.
+     * If path is listed several times - only the first entry is kept.
+     *
+     * @param files list of files
+     * @param file  where to write
+     * @throws IOException if failed to write, or hashes can't be stored in binary form
+     */
+    public static void write(final List<ManifestFile> files, final File file) throws IOException {
+        final List<Entry> entries = sortedEntries(files);
+        final int digestLength = entries.isEmpty() ? 0 : entries.get(0).digest.length;
+
+        final ByteArrayOutputStream digests = new ByteArrayOutputStream(entries.size() * digestLength);
+        final ByteArrayOutputStream pathTable = new ByteArrayOutputStream(entries.size() * 16);
+        final List<Integer> restarts = new ArrayList<Integer>(entries.size() / RESTART_INTERVAL + 1);
+
+        byte[] previousPath = new byte[0];
+        for (int i = 0, count = entries.size(); i < count; i++) {
+            final Entry entry = entries.get(i);
+            if (entry.digest.length != digestLength) {
+                throw new IOException("Hashes of the files have different length");
+            }
+            digests.write(entry.digest, 0, digestLength);
+
+            int sharedLength = 0;
+            if (i % RESTART_INTERVAL == 0) {
+                restarts.add(pathTable.size());
+            } else {
+                sharedLength = sharedPrefixLength(previousPath, entry.path);
+            }
+            writeVarInt(pathTable, sharedLength);
+            writeVarInt(pathTable, entry.path.length - sharedLength);
+            pathTable.write(entry.path, sharedLength, entry.path.length - sharedLength);
+
+            previousPath = entry.path;
+        }
+
+        final File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            output.write(MAGIC);
+            output.writeInt(entries.size());
+            output.writeInt(digestLength);
+            output.writeInt(RESTART_INTERVAL);
+            output.writeInt(restarts.size());
+            output.writeInt(pathTable.size());
+            for (int restartOffset : restarts) {
+                output.writeInt(restartOffset);
+            }
+            digests.writeTo(output);
+            pathTable.writeTo(output);
+        } finally {
+            output.close();
+        }
+
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+            throw new IOException("Failed to save binary manifest " + file.getAbsolutePath());
+        }
+    }
+
+    private static List<Entry> sortedEntries(final List<ManifestFile> files) throws IOException {
+        final List<Entry> entries = new ArrayList<Entry>(files.size());
+        for (ManifestFile file : files) {
+            final byte[] digest = Hex.decode(file.hash);
+            if (digest == null) {
+                throw new IOException("Hash " + file.hash + " can't be stored in binary form");
+            }
+            entries.add(new Entry(file.name.getBytes("UTF-8"), digest));
+        }
+
+        // sort is stable, so the first entry of the duplicated path is kept
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry lhs, Entry rhs) {
+                return compareBytes(lhs.path, lhs.path.length, rhs.path);
+            }
+        });
+
+        final List<Entry> uniqueEntries = new ArrayList<Entry>(entries.size());
+        for (Entry entry : entries) {
+            final int last = uniqueEntries.size() - 1;
+            if (last < 0 || compareBytes(uniqueEntries.get(last).path, uniqueEntries.get(last).path.length, entry.path) != 0) {
+                uniqueEntries.add(entry);
+            }
+        }
+
+        return uniqueEntries;
+    }
+
+    private static void writeVarInt(final ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    // endregion
+
+    // region Reading
+
+    /**
+     * Open binary manifest.
+     * File is memory-mapped, and only it's header is read.
+     *
+     * @param file manifest file
+     * @return opened manifest
+     * @throws IOException if file can't be read or it is not a binary manifest
+     */
+    public static BinaryManifest open(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            return new BinaryManifest(buffer);
+        } finally {
+            // mapping stays valid after the channel is closed
+            randomAccessFile.close();
+        }
+    }
+
+    private BinaryManifest(final ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Binary manifest is truncated");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) {
+                throw new IOException("File is not a binary manifest");
+            }
+        }
+
+        entriesCount = buffer.getInt(MAGIC.length);
+        digestLength = buffer.getInt(MAGIC.length + 4);
+        restartInterval = buffer.getInt(MAGIC.length + 8);
+        restartsCount = buffer.getInt(MAGIC.length + 12);
+        final int pathTableLength = buffer.getInt(MAGIC.length + 16);
+
+        restartsOffset = HEADER_SIZE;
+        digestsOffset = restartsOffset + restartsCount * 4;
+        pathTableOffset = digestsOffset + entriesCount * digestLength;
+
+        // manifests of the earlier versions might have trailing sections: they are ignored
+        final boolean isValid = entriesCount >= 0 && digestLength >= 0 && restartInterval > 0 && pathTableLength >= 0
+                && restartsCount == (entriesCount + restartInterval - 1) / restartInterval
+                && (long) pathTableOffset + pathTableLength <= buffer.capacity();
+        if (!isValid) {
+            throw new IOException("Binary manifest is corrupted");
+        }
+    }
+
+    /**
+     * Getter for the number of files in the manifest.
+     *
+     * @return number of files
+     */
+    public int size() {
+        return entriesCount;
+    }
+
+    /**
+     * Find hash of the file.
+     *
+     * @param fileName relative path to the file
+     * @return hash of the file; <code>null</code> - if file is not in the manifest
+     */
+    public String findHash(final String fileName) {
+        final byte[] target;
+        try {
+            target = fileName.getBytes("UTF-8");
+        } catch (IOException e) {
+            return null;
+        }
+
+        // find the last restart point, which path is not greater than the target
+        int low = 0;
+        int high = restartsCount - 1;
+        int restart = -1;
+        final int[] position = new int[1];
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            position[0] = pathTableOffset + buffer.getInt(restartsOffset + middle * 4);
+            readVarInt(position);
+            final int length = readVarInt(position);
+            final int comparison = compareBytes(readBytes(position[0], length), length, target);
+            if (comparison == 0) {
+                return digestAsHex(middle * restartInterval);
+            }
+            if (comparison < 0) {
+                restart = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        if (restart < 0) {
+            return null;
+        }
+
+        // scan entries of the block
+        final PathReader reader = new PathReader(restart);
+        final int blockEnd = Math.min(entriesCount, (restart + 1) * restartInterval);
+        for (int index = restart * restartInterval; index < blockEnd; index++) {
+            reader.next();
+            final int comparison = compareBytes(reader.path, reader.pathLength, target);
+            if (comparison == 0) {
+                return digestAsHex(index);
+            }
+            if (comparison > 0) {
+                break;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Read all files from the manifest.
+     *
+     * @return list of files, sorted by path
+     */
+    public CompactFileList readFiles() {
+        final CompactFileList files = new CompactFileList(entriesCount);
+        final PathReader reader = new PathReader(0);
+        for (int index = 0; index < entriesCount; index++) {
+            reader.next();
+            files.add(reader.pathAsString(), digestAsHex(index));
+        }
+        files.trimToSize();
+
+        return files;
+    }
+
+    /**
+     * Create reader, that returns files of the manifest one by one, sorted by path.
+     * Files are read directly from the mapped file, so the list of files is not created.
+     *
+     * @return reader of the files
+     */
+    public ManifestFileReader fileReader() {
+        return new ManifestFileReader() {
+            private final PathReader reader = new PathReader(0);
+            private int index;
+
+            @Override
+            public ManifestFile readNext() {
+                if (index >= entriesCount) {
+                    return null;
+                }
+
+                reader.next();
+                return new ManifestFile(reader.pathAsString(), digestAsHex(index++));
+            }
+        };
+    }
+
+    private String digestAsHex(final int index) {
+        return Hex.encode(buffer, digestsOffset + index * digestLength, digestLength);
+    }
+
+    private byte[] readBytes(final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + i);
+        }
+
+        return bytes;
+    }
+
+    private int readVarInt(final int[] position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * Sequential reader of the prefix-compressed paths, starting from the restart point.
+     */
+    private class PathReader {
+
+        private final int[] position;
+        private byte[] path;
+        private int pathLength;
+
+        PathReader(int restart) {
+            position = new int[]{pathTableOffset + (restartsCount > 0 ? buffer.getInt(restartsOffset + restart * 4) : 0)};
+            path = new byte[256];
+        }
+
+        void next() {
+            final int sharedLength = readVarInt(position);
+            final int suffixLength = readVarInt(position);
+            final int newLength = sharedLength + suffixLength;
+            if (newLength > path.length) {
+                final byte[] newPath = new byte[Math.max(newLength, path.length * 2)];
+                System.arraycopy(path, 0, newPath, 0, sharedLength);
+                path = newPath;
+            }
+
+            for (int i = 0; i < suffixLength; i++) {
+                path[sharedLength + i] = buffer.get(position[0]++);
+            }
+            pathLength = newLength;
+        }
+
+        String pathAsString() {
+            try {
+                return new String(path, 0, pathLength, "UTF-8");
+            } catch (IOException e) {
+                return new String(path, 0, pathLength);
+            }
+        }
+    }
+
+    // endregion
+
+    // region Helpers
+
+    private static int sharedPrefixLength(final byte[] lhs, final byte[] rhs) {
+        final int maxLength = Math.min(lhs.length, rhs.length);
+        int length = 0;
+        while (length < maxLength && lhs[length] == rhs[length]) {
+            length++;
+        }
+
+        return length;
+    }
+
+    /**
+     * Compare UTF-8 strings as unsigned bytes: that gives the same order, as comparing by unicode code points.
+     */
+    private static int compareBytes(final byte[] lhs, final int lhsLength, final byte[] rhs) {
+        final int length = Math.min(lhsLength, rhs.length);
+        for (int i = 0; i < length; i++) {
+            final int difference = (lhs[i] & 0xFF) - (rhs[i] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+
+        return lhsLength - rhs.length;
+    }
+
+    private static class Entry {
+        final byte[] path;
+        final byte[] digest;
+
+        Entry(byte[] path, byte[] digest) {
+            this.path = path;
+            this.digest = digest;
+        }
+    }
+
+    // endregion
+}
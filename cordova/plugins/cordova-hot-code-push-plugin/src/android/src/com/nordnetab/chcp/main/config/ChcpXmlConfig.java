@@ -16,11 +16,15 @@ public class ChcpXmlConfig {
     private String configUrl;
     private boolean allowUpdatesAutoDownload;
     private boolean allowUpdatesAutoInstall;
+    private boolean requireParanoidVerification;
+    private boolean allowLayeredReleases;
 
     private ChcpXmlConfig() {
         configUrl = "";
         allowUpdatesAutoDownload = true;
         allowUpdatesAutoInstall = true;
+        requireParanoidVerification = false;
+        allowLayeredReleases = false;
     }
 
     /**
@@ -80,6 +84,44 @@ public class ChcpXmlConfig {
         return allowUpdatesAutoInstall;
     }
 
+    /**
+     * Setter for the flag if all update files should be hashed again before the installation.
+     *
+     * @param isRequired set to <code>true</code> to ignore hashes, that were checked during the download.
+     */
+    public void requireParanoidVerification(boolean isRequired) {
+        requireParanoidVerification = isRequired;
+    }
+
+    /**
+     * Getter for the flag if all update files should be hashed again before the installation.
+     * By default it is off: files, that were not changed since they were verified during the download, are not read again.
+     *
+     * @return <code>true</code> if paranoid verification is enabled, <code>false</code> - otherwise.
+     */
+    public boolean isParanoidVerificationRequired() {
+        return requireParanoidVerification;
+    }
+
+    /**
+     * Setter for the flag if new releases can be stored as layers on top of the current release.
+     *
+     * @param isAllowed set to <code>true</code> to store in the new release only the files, that were changed by it.
+     */
+    public void allowLayeredReleases(boolean isAllowed) {
+        allowLayeredReleases = isAllowed;
+    }
+
+    /**
+     * Getter for the flag if new releases can be stored as layers on top of the current release.
+     * By default it is off: every release keeps all web content files in it's folder.
+     *
+     * @return <code>true</code> if layered releases are enabled, <code>false</code> - otherwise.
+     */
+    public boolean isLayeredReleasesAllowed() {
+        return allowLayeredReleases;
+    }
+
     /**
      * Load plugins specific preferences from Cordova's config.xml.
      *
@@ -116,5 +158,13 @@ public class ChcpXmlConfig {
         if (jsOptions.has(XmlTags.AUTO_DOWNLOAD_TAG)) {
             allowUpdatesAutoDownload(jsOptions.getBoolean(XmlTags.AUTO_DOWNLOAD_TAG));
         }
+
+        if (jsOptions.has(XmlTags.PARANOID_VERIFICATION_TAG)) {
+            requireParanoidVerification(jsOptions.getBoolean(XmlTags.PARANOID_VERIFICATION_TAG));
+        }
+
+        if (jsOptions.has(XmlTags.LAYERED_RELEASES_TAG)) {
+            allowLayeredReleases(jsOptions.getBoolean(XmlTags.LAYERED_RELEASES_TAG));
+        }
     }
 }
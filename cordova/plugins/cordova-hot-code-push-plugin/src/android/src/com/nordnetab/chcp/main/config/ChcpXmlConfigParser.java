@@ -69,6 +69,18 @@ class ChcpXmlConfigParser extends ConfigXmlParser {
         // parse auto installation preference
         if (name.equals(XmlTags.AUTO_INSTALLATION_TAG)) {
             processAutoInstallationBlock(xml);
+            return;
+        }
+
+        // parse paranoid verification preference
+        if (name.equals(XmlTags.PARANOID_VERIFICATION_TAG)) {
+            processParanoidVerificationBlock(xml);
+            return;
+        }
+
+        // parse layered releases preference
+        if (name.equals(XmlTags.LAYERED_RELEASES_TAG)) {
+            processLayeredReleasesBlock(xml);
         }
     }
 
@@ -88,6 +100,16 @@ class ChcpXmlConfigParser extends ConfigXmlParser {
         chcpConfig.allowUpdatesAutoInstall(isEnabled);
     }
 
+    private void processParanoidVerificationBlock(XmlPullParser xml) {
+        boolean isEnabled = xml.getAttributeValue(null, XmlTags.PARANOID_VERIFICATION_ENABLED_ATTRIBUTE).equals("true");
+        chcpConfig.requireParanoidVerification(isEnabled);
+    }
+
+    private void processLayeredReleasesBlock(XmlPullParser xml) {
+        boolean isEnabled = xml.getAttributeValue(null, XmlTags.LAYERED_RELEASES_ENABLED_ATTRIBUTE).equals("true");
+        chcpConfig.allowLayeredReleases(isEnabled);
+    }
+
     @Override
     public void handleEndTag(XmlPullParser xml) {
         if (didParseChcpBlock) {
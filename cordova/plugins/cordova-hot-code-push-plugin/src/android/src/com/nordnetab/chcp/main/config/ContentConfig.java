@@ -1,9 +1,12 @@
 package com.nordnetab.chcp.main.config;
 
+import android.util.Log;
+
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.nordnetab.chcp.main.model.UpdateTime;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
 
 /**
  * Created by Nikolay Demyankov on 22.07.15.
@@ -20,6 +23,9 @@ public class ContentConfig {
         public static final String MINIMUM_NATIVE_VERSION = "min_native_interface";
         public static final String UPDATE = "update";
         public static final String CONTENT_URL = "content_url";
+        public static final String PATCHES_URL = "patches_url";
+        public static final String ARCHIVE_URL = "archive_url";
+        public static final String HASH_ALGORITHM = "hash_algorithm";
     }
 
     /**
@@ -42,6 +48,26 @@ public class ContentConfig {
                 config.setMinimumNativeVersion(0);
             }
 
+            // where delta patches are located
+            if (node.has(JsonKeys.PATCHES_URL)) {
+                config.setPatchesUrl(node.get(JsonKeys.PATCHES_URL).asText());
+            }
+
+            // where archive of the whole release is located
+            if (node.has(JsonKeys.ARCHIVE_URL)) {
+                config.setArchiveUrl(node.get(JsonKeys.ARCHIVE_URL).asText());
+            }
+
+            // how hashes of the files are calculated
+            HashAlgorithm hashAlgorithm = null;
+            if (node.has(JsonKeys.HASH_ALGORITHM)) {
+                hashAlgorithm = HashAlgorithm.fromString(node.get(JsonKeys.HASH_ALGORITHM).asText());
+                if (hashAlgorithm == null) {
+                    Log.d("CHCP", "Hash algorithm " + node.get(JsonKeys.HASH_ALGORITHM).asText() + " is not supported, using md5");
+                }
+            }
+            config.setHashAlgorithm(hashAlgorithm != null ? hashAlgorithm : HashAlgorithm.MD5);
+
             // when to perform update
             if (node.has(JsonKeys.UPDATE)) {
                 config.setUpdateTime(UpdateTime.fromString(node.get(JsonKeys.UPDATE).asText()));
@@ -58,6 +84,9 @@ public class ContentConfig {
     private String releaseVersion;
     private int minimumNativeVersion;
     private String contentUrl;
+    private String patchesUrl;
+    private String archiveUrl;
+    private HashAlgorithm hashAlgorithm;
     private UpdateTime updateTime;
     private JsonNode jsonNode;
 
@@ -95,6 +124,36 @@ public class ContentConfig {
         return contentUrl;
     }
 
+    /**
+     * Getter for url on the server where delta patches are stored.
+     * Patch for the file is loaded from <code>patchesUrl/oldHash_newHash.patch</code>.
+     *
+     * @return patches url; <code>null</code> - if patches are not used
+     */
+    public String getPatchesUrl() {
+        return patchesUrl;
+    }
+
+    /**
+     * Getter for url of the zip archive with all files of the release.
+     * If set - large updates are loaded through it in a single request instead of file by file.
+     *
+     * @return archive url; <code>null</code> - if archive is not provided
+     */
+    public String getArchiveUrl() {
+        return archiveUrl;
+    }
+
+    /**
+     * Getter for the algorithm, with which hashes of the files in the content manifest are calculated.
+     *
+     * @return hash algorithm
+     * @see HashAlgorithm
+     */
+    public HashAlgorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
     /**
      * Getter for the preference, when we should install the update.
      *
@@ -133,6 +192,18 @@ public class ContentConfig {
         this.contentUrl = contentUrl;
     }
 
+    private void setPatchesUrl(String patchesUrl) {
+        this.patchesUrl = patchesUrl;
+    }
+
+    private void setArchiveUrl(String archiveUrl) {
+        this.archiveUrl = archiveUrl;
+    }
+
+    private void setHashAlgorithm(HashAlgorithm hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
     private void setUpdateTime(UpdateTime updateTime) {
         this.updateTime = updateTime;
     }
@@ -145,6 +216,15 @@ public class ContentConfig {
         node.set(JsonKeys.MINIMUM_NATIVE_VERSION, nodeFactory.numberNode(minimumNativeVersion));
         node.set(JsonKeys.VERSION, nodeFactory.textNode(releaseVersion));
         node.set(JsonKeys.UPDATE, nodeFactory.textNode(updateTime.toString()));
+        if (patchesUrl != null) {
+            node.set(JsonKeys.PATCHES_URL, nodeFactory.textNode(patchesUrl));
+        }
+        if (archiveUrl != null) {
+            node.set(JsonKeys.ARCHIVE_URL, nodeFactory.textNode(archiveUrl));
+        }
+        if (hashAlgorithm != null && hashAlgorithm != HashAlgorithm.MD5) {
+            node.set(JsonKeys.HASH_ALGORITHM, nodeFactory.textNode(hashAlgorithm.toString()));
+        }
 
         return node;
     }
@@ -1,17 +1,30 @@
 package com.nordnetab.chcp.main.config;
 
-import android.text.TextUtils;
+import android.util.Log;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.JsonNodeFactory;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.nordnetab.chcp.main.model.CompactFileList;
 import com.nordnetab.chcp.main.model.ManifestDiff;
+import com.nordnetab.chcp.main.model.ManifestDiffSink;
 import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.model.ManifestFileReader;
+import com.nordnetab.chcp.main.model.SortedManifestMerge;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by Nikolay Demyankov on 22.07.15.
@@ -30,6 +43,9 @@ public class ContentManifest {
         public static final String FILE_HASH = "hash";
     }
 
+    // factory is thread safe, so it is shared between all parsers and generators
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
     /**
      * Create instance of the object from JSON string.
      * JSON string is a content of the chcp.manifest file.
@@ -40,17 +56,37 @@ public class ContentManifest {
     public static ContentManifest fromJson(String json) {
         ContentManifest manifest = new ContentManifest();
         try {
-            JsonNode filesListNode = new ObjectMapper().readTree(json);
-            for (JsonNode fileNode : filesListNode) {
-                String fileName = fileNode.get(JsonKeys.FILE_PATH).asText();
-                String fileHash = fileNode.get(JsonKeys.FILE_HASH).asText();
-                manifest.files.add(new ManifestFile(fileName, fileHash));
+            final JsonParser parser = JSON_FACTORY.createParser(json);
+            try {
+                readFiles(parser, manifest.files);
+            } finally {
+                parser.close();
             }
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        manifest.jsonString = json;
+        return manifest;
+    }
+
+    /**
+     * Create instance of the object from the stream with JSON data.
+     * Entries are parsed one by one directly from the stream, so the whole JSON is never kept in memory.
+     * Stream is not closed.
+     *
+     * @param input stream with the content of the chcp.manifest file
+     * @return content manifest instance
+     * @throws IOException if failed to read the stream or JSON is malformed
+     */
+    public static ContentManifest fromJson(InputStream input) throws IOException {
+        final ContentManifest manifest = new ContentManifest();
+        final JsonParser parser = JSON_FACTORY.createParser(input);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        try {
+            readFiles(parser, manifest.files);
+        } finally {
+            parser.close();
+        }
 
         return manifest;
     }
@@ -62,56 +98,279 @@ public class ContentManifest {
      */
     @Override
     public String toString() {
-        if (TextUtils.isEmpty(jsonString)) {
-            jsonString = generateJson();
+        final StringWriter writer = new StringWriter();
+        try {
+            final JsonGenerator generator = JSON_FACTORY.createGenerator(writer);
+            writeFiles(generator, getFiles());
+            generator.close();
+        } catch (IOException e) {
+            Log.d("CHCP", "Failed to convert content manifest into JSON", e);
         }
 
-        return jsonString;
+        return writer.toString();
     }
 
-    private String generateJson() {
-        final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
-        ArrayNode filesListNode = nodeFactory.arrayNode();
+    /**
+     * Write object as JSON into the stream.
+     * Stream is not closed.
+     *
+     * @param output where to write JSON
+     * @throws IOException if failed to write into the stream
+     */
+    public void writeJson(OutputStream output) throws IOException {
+        final JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        writeFiles(generator, getFiles());
+        generator.close();
+    }
+
+    private static void readFiles(final JsonParser parser, final CompactFileList files) throws IOException {
+        final JsonFileReader reader = new JsonFileReader(parser);
+        ManifestFile file;
+        while ((file = reader.readNext()) != null) {
+            files.add(file.name, file.hash);
+        }
+        files.trimToSize();
+    }
+
+    private static void writeFiles(final JsonGenerator generator, final List<ManifestFile> files) throws IOException {
+        generator.writeStartArray();
         for (ManifestFile fileEntry : files) {
-            ObjectNode fileNode = nodeFactory.objectNode();
-            fileNode.set(JsonKeys.FILE_PATH, nodeFactory.textNode(fileEntry.name));
-            fileNode.set(JsonKeys.FILE_HASH, nodeFactory.textNode(fileEntry.hash));
-            filesListNode.add(fileNode);
+            generator.writeStartObject();
+            generator.writeStringField(JsonKeys.FILE_PATH, fileEntry.name);
+            generator.writeStringField(JsonKeys.FILE_HASH, fileEntry.hash);
+            generator.writeEndObject();
         }
+        generator.writeEndArray();
+    }
 
-        return filesListNode.toString();
+    /**
+     * Reader of the manifest files, that parses them from JSON one by one.
+     */
+    private static class JsonFileReader implements ManifestFileReader {
+
+        private final JsonParser parser;
+        private boolean isStarted;
+        private boolean isFinished;
+
+        JsonFileReader(final JsonParser parser) {
+            this.parser = parser;
+        }
+
+        @Override
+        public ManifestFile readNext() throws IOException {
+            if (isFinished) {
+                return null;
+            }
+
+            if (!isStarted) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new JsonParseException("Content manifest should be an array of files", parser.getCurrentLocation());
+                }
+                isStarted = true;
+            }
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                    throw new JsonParseException("Unexpected token in content manifest", parser.getCurrentLocation());
+                }
+                isFinished = true;
+                return null;
+            }
+
+            String fileName = null;
+            String fileHash = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String fieldName = parser.getCurrentName();
+                parser.nextToken();
+                if (JsonKeys.FILE_PATH.equals(fieldName)) {
+                    fileName = parser.getValueAsString();
+                } else if (JsonKeys.FILE_HASH.equals(fieldName)) {
+                    fileHash = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+
+            if (fileName == null || fileHash == null) {
+                throw new JsonParseException("Manifest entry should have file name and hash", parser.getCurrentLocation());
+            }
+
+            return new ManifestFile(fileName, fileHash);
+        }
     }
 
     // endregion
 
-    private final List<ManifestFile> files;
-    private String jsonString;
+    private CompactFileList files;
+    private BinaryManifest binaryManifest;
+    private Map<String, Integer> filesIndex;
 
     private ContentManifest() {
-        this.files = new ArrayList<ManifestFile>();
+        this.files = new CompactFileList();
+    }
+
+    private ContentManifest(BinaryManifest binaryManifest) {
+        this.binaryManifest = binaryManifest;
+    }
+
+    /**
+     * Create instance of the object, backed by the binary manifest.
+     * List of files is read from it only when it is requested.
+     *
+     * @param binaryManifest opened binary manifest
+     * @return content manifest instance
+     * @see BinaryManifest
+     */
+    public static ContentManifest fromBinary(BinaryManifest binaryManifest) {
+        return new ContentManifest(binaryManifest);
     }
 
     /**
      * Getter for list of web project files.
+     * Files are kept in the compact form, and list entries are created on access.
      *
      * @return list of files
      */
-    public List<ManifestFile> getFiles() {
+    public synchronized List<ManifestFile> getFiles() {
+        if (files == null) {
+            files = binaryManifest.readFiles();
+        }
+
         return files;
     }
 
+    /**
+     * Find hash of the file in the manifest.
+     * If manifest is backed by the binary manifest - lookup is a binary search, that doesn't read the whole list of files.
+     * Otherwise, files are indexed by name on the first lookup. If name is repeated - first entry is used.
+     *
+     * @param fileName relative path to the file
+     * @return hash of the file; <code>null</code> - if file is not in the manifest
+     */
+    public synchronized String findHash(String fileName) {
+        if (files == null) {
+            return binaryManifest.findHash(fileName);
+        }
+
+        if (filesIndex == null) {
+            filesIndex = new HashMap<String, Integer>(files.size() * 2);
+            for (int i = 0, count = files.size(); i < count; i++) {
+                final String name = files.getName(i);
+                if (!filesIndex.containsKey(name)) {
+                    filesIndex.put(name, i);
+                }
+            }
+        }
+
+        final Integer index = filesIndex.get(fileName);
+
+        return index != null ? files.getHash(index) : null;
+    }
+
+    /**
+     * Create reader, that returns files of the manifest one by one.
+     * If manifest is backed by the binary manifest - files are read from it without creating the list of files.
+     *
+     * @return reader of the files
+     */
+    public synchronized ManifestFileReader fileReader() {
+        if (files == null) {
+            return binaryManifest.fileReader();
+        }
+
+        return SortedManifestMerge.readerOf(files);
+    }
+
+    /**
+     * Find differences between this manifest and the new one, that is read from the stream with JSON data.
+     * New manifest is never kept in memory: it's entries are parsed one by one, compared with the entries
+     * of this manifest and reported to the sink right away.
+     * Reported files are the same, as in the lists of {@link #calculateDifference(ContentManifest)}, and in the same order.
+     * This works only if both manifests are sorted by path. If they are not - comparison is stopped,
+     * and events, that sink has received so far, should be discarded.
+     * Stream is not closed.
+     *
+     * @param newManifestJson stream with the content of the new chcp.manifest file
+     * @param sink            where to report the difference
+     * @return <code>true</code> if difference is calculated; <code>false</code> - if manifests are not sorted
+     * @throws IOException if failed to read the stream or JSON is malformed
+     * @see SortedManifestMerge
+     */
+    public boolean calculateDifference(InputStream newManifestJson, ManifestDiffSink sink) throws IOException {
+        final JsonParser parser = JSON_FACTORY.createParser(newManifestJson);
+        parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+        try {
+            return SortedManifestMerge.merge(fileReader(), new JsonFileReader(parser), sink);
+        } finally {
+            parser.close();
+        }
+    }
+
     /**
      * Find differences between this manifest and the new one.
      * Current object is considered as an old manifest.
+     * <p/>
+     * Each entry of the old manifest is compared with the first entry of the new manifest, that has the same path:
+     * if there is no such entry - old one is deleted; if their hashes are different - new one is changed.
+     * Each entry of the new manifest, which path is not in the old manifest, is added.
+     * Deleted and changed files are listed in the order of the old manifest, added files - in the order of the new one.
+     * Repeated paths are not merged, so the result is the same, as if each old entry was looked up in the new manifest
+     * and each new entry - in the old one.
+     * <p/>
+     * Result doesn't depend on the strategy, that is chosen for the comparison:
+     * <ul>
+     * <li>if both manifests are sorted by path - they are merged in a single pass without any additional indexes;</li>
+     * <li>otherwise, files are matched by their names through the hash map, so it takes linear time.</li>
+     * </ul>
      *
      * @param manifest new manifest, relative to which we will calculate the difference
      * @return calculated difference between manifests
      * @see ManifestDiff
      * @see ManifestFile
      */
-    // TODO: need more cleaner way to find differences between two lists
     public ManifestDiff calculateDifference(ContentManifest manifest) {
-        final List<ManifestFile> oldManifestFiles = files;
+        final ManifestDiff sortedDiff = calculateDifferenceByMerge(manifest);
+        if (sortedDiff != null) {
+            return sortedDiff;
+        }
+
+        return calculateDifferenceByIndex(manifest);
+    }
+
+    // region Difference strategies
+
+    /**
+     * Find differences by merging sorted manifests.
+     *
+     * @param manifest new manifest; can be <code>null</code>
+     * @return calculated difference; <code>null</code> - if manifests are not sorted
+     * @see SortedManifestMerge
+     */
+    ManifestDiff calculateDifferenceByMerge(ContentManifest manifest) {
+        final ManifestDiff diff = new ManifestDiff();
+        try {
+            final ManifestFileReader newFilesReader = manifest != null
+                    ? manifest.fileReader() : SortedManifestMerge.readerOf(new ArrayList<ManifestFile>());
+            if (SortedManifestMerge.merge(fileReader(), newFilesReader, diff)) {
+                return diff;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Find differences by matching files through the hash map.
+     * Works for any order of the files.
+     *
+     * @param manifest new manifest; can be <code>null</code>
+     * @return calculated difference
+     */
+    ManifestDiff calculateDifferenceByIndex(ContentManifest manifest) {
+        final List<ManifestFile> oldManifestFiles = getFiles();
         final List<ManifestFile> newManifestFiles = (manifest != null && manifest.getFiles() != null)
                 ? manifest.getFiles() : new ArrayList<ManifestFile>();
 
@@ -120,39 +379,36 @@ public class ContentManifest {
         final List<ManifestFile> deletedFiles = diff.deletedFiles();
         final List<ManifestFile> addedFiles = diff.addedFiles();
 
+        // index new files by name; if name is duplicated - first entry is used
+        final Map<String, ManifestFile> newFilesByName = new HashMap<String, ManifestFile>(newManifestFiles.size() * 2);
+        for (ManifestFile newFile : newManifestFiles) {
+            if (!newFilesByName.containsKey(newFile.name)) {
+                newFilesByName.put(newFile.name, newFile);
+            }
+        }
 
         // find deleted and updated files
+        final Set<String> oldFilesNames = new HashSet<String>(oldManifestFiles.size() * 2);
         for (ManifestFile oldFile : oldManifestFiles) {
-            boolean isDeleted = true;
-            for (ManifestFile newFile : newManifestFiles) {
-                if (oldFile.name.equals(newFile.name)) {
-                    isDeleted = false;
-                    if (!newFile.hash.equals(oldFile.hash)) {
-                        changedFiles.add(newFile);
-                    }
-
-                    break;
-                }
-            }
-            if (isDeleted) {
+            oldFilesNames.add(oldFile.name);
+
+            final ManifestFile newFile = newFilesByName.get(oldFile.name);
+            if (newFile == null) {
                 deletedFiles.add(oldFile);
+            } else if (!newFile.hash.equals(oldFile.hash)) {
+                changedFiles.add(newFile);
             }
         }
 
         // find new files
         for (ManifestFile newFile : newManifestFiles) {
-            boolean isFound = false;
-            for (ManifestFile oldFile : oldManifestFiles) {
-                if (newFile.name.equals(oldFile.name)) {
-                    isFound = true;
-                    break;
-                }
-            }
-            if (!isFound) {
+            if (!oldFilesNames.contains(newFile.name)) {
                 addedFiles.add(newFile);
             }
         }
 
         return diff;
     }
+
+    // endregion
 }
@@ -24,4 +24,12 @@ final class XmlTags {
     public static final String AUTO_INSTALLATION_TAG = "auto-install";
     public static final String AUTO_INSTALLATION_ENABLED_ATTRIBUTE = "enabled";
 
+    // keys for paranoid verification of the update before installation
+    public static final String PARANOID_VERIFICATION_TAG = "paranoid-verification";
+    public static final String PARANOID_VERIFICATION_ENABLED_ATTRIBUTE = "enabled";
+
+    // keys for storing releases as layers on top of each other
+    public static final String LAYERED_RELEASES_TAG = "layered-releases";
+    public static final String LAYERED_RELEASES_ENABLED_ATTRIBUTE = "enabled";
+
 }
@@ -29,6 +29,7 @@ public enum ChcpError {
     INSTALLATION_ALREADY_IN_PROGRESS(-16, "Installation already in progress"),
     DOWNLOAD_ALREADY_IN_PROGRESS(-17, "Download already in progress"),
     ASSETS_FOLDER_IN_NOT_YET_INSTALLED(-18, "API requests are ignored until assets are installed. Please, wait."),
+    LOCAL_VERSION_OF_RELEASE_IS_INCOMPLETE(-19, "Parent release of the current release is missing"),
 
     // endregion
 
@@ -0,0 +1,233 @@
+package com.nordnetab.chcp.main.model;
+
+import com.nordnetab.chcp.main.utils.Hex;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Memory efficient list of the manifest files.
+ * <p/>
+ * Instead of keeping two strings per file, list stores:
+ * <ul>
+ * <li>paths of the directories in the shared table, so each directory is kept only once;</li>
+ * <li>names of the files inside their directories in one char array;</li>
+ * <li>hashes as raw bytes in one byte array.</li>
+ * </ul>
+ * {@link ManifestFile} objects are created only when they are requested from the list.
+ * Hashes, that are not lowercase hex strings, are stored as they are, so the list always returns
+ * exactly the same values, that were added to it.
+ * <p/>
+ * List supports only appending of the files.
+ *
+ * @see ManifestFile
+ */
+public class CompactFileList extends AbstractList<ManifestFile> implements RandomAccess {
+
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final int NO_DIRECTORY = -1;
+
+    private final List<String> directories;
+    private final Map<String, Integer> directoriesIndexes;
+
+    private int size;
+    private int[] entryDirectory;
+    private int[] entryNameEnd;
+    private char[] names;
+    private int namesLength;
+
+    private int digestLength;
+    private byte[] digests;
+    private Map<Integer, String> rawHashes;
+
+    /**
+     * Class constructor.
+     */
+    public CompactFileList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param capacity expected number of files
+     */
+    public CompactFileList(int capacity) {
+        capacity = Math.max(capacity, 1);
+        directories = new ArrayList<String>();
+        directoriesIndexes = new HashMap<String, Integer>();
+        entryDirectory = new int[capacity];
+        entryNameEnd = new int[capacity];
+        names = new char[capacity * 8];
+        digestLength = -1;
+        digests = new byte[0];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public ManifestFile get(int index) {
+        return new ManifestFile(getName(index), getHash(index));
+    }
+
+    @Override
+    public boolean add(ManifestFile file) {
+        add(file.name, file.hash);
+
+        return true;
+    }
+
+    /**
+     * Add file to the end of the list.
+     *
+     * @param name relative path to the file
+     * @param hash hash of the file
+     */
+    public void add(String name, String hash) {
+        if (name == null || hash == null) {
+            throw new NullPointerException("File name and hash can't be null");
+        }
+
+        ensureCapacity(size + 1);
+
+        // split path into directory and file name
+        final int slashIndex = name.lastIndexOf('/');
+        final int nameStart;
+        if (slashIndex > 0) {
+            entryDirectory[size] = directoryIndex(name.substring(0, slashIndex));
+            nameStart = slashIndex + 1;
+        } else {
+            entryDirectory[size] = NO_DIRECTORY;
+            nameStart = 0;
+        }
+
+        final int nameLength = name.length() - nameStart;
+        ensureNamesCapacity(namesLength + nameLength);
+        name.getChars(nameStart, name.length(), names, namesLength);
+        namesLength += nameLength;
+        entryNameEnd[size] = namesLength;
+
+        storeHash(size, hash);
+
+        size++;
+        modCount++;
+    }
+
+    /**
+     * Getter for the path of the file without creating {@link ManifestFile} object.
+     *
+     * @param index index of the file
+     * @return relative path to the file
+     */
+    public String getName(int index) {
+        checkIndex(index);
+
+        final int nameStart = index == 0 ? 0 : entryNameEnd[index - 1];
+        final int nameLength = entryNameEnd[index] - nameStart;
+        final int directory = entryDirectory[index];
+        if (directory == NO_DIRECTORY) {
+            return new String(names, nameStart, nameLength);
+        }
+
+        final String directoryPath = directories.get(directory);
+        final StringBuilder builder = new StringBuilder(directoryPath.length() + 1 + nameLength);
+        builder.append(directoryPath).append('/').append(names, nameStart, nameLength);
+
+        return builder.toString();
+    }
+
+    /**
+     * Getter for the hash of the file without creating {@link ManifestFile} object.
+     *
+     * @param index index of the file
+     * @return hash of the file
+     */
+    public String getHash(int index) {
+        checkIndex(index);
+
+        if (rawHashes != null) {
+            final String rawHash = rawHashes.get(index);
+            if (rawHash != null) {
+                return rawHash;
+            }
+        }
+
+        return Hex.encode(digests, index * digestLength, digestLength);
+    }
+
+    /**
+     * Release the unused capacity.
+     * Should be called, when all files are added.
+     */
+    public void trimToSize() {
+        entryDirectory = Arrays.copyOf(entryDirectory, Math.max(size, 1));
+        entryNameEnd = Arrays.copyOf(entryNameEnd, Math.max(size, 1));
+        names = Arrays.copyOf(names, namesLength);
+        if (digestLength > 0) {
+            digests = Arrays.copyOf(digests, size * digestLength);
+        }
+    }
+
+    // region Storage
+
+    private int directoryIndex(final String path) {
+        Integer index = directoriesIndexes.get(path);
+        if (index == null) {
+            index = directories.size();
+            directories.add(path);
+            directoriesIndexes.put(path, index);
+        }
+
+        return index;
+    }
+
+    private void storeHash(final int index, final String hash) {
+        // length of the digest is defined by the first hash
+        if (digestLength < 0) {
+            digestLength = Hex.isHex(hash) ? hash.length() / 2 : 0;
+            digests = new byte[entryDirectory.length * digestLength];
+        }
+
+        if (digestLength == 0 || hash.length() != digestLength * 2 || !Hex.decode(hash, digests, index * digestLength)) {
+            if (rawHashes == null) {
+                rawHashes = new HashMap<Integer, String>();
+            }
+            rawHashes.put(index, hash);
+        }
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity <= entryDirectory.length) {
+            return;
+        }
+
+        final int newCapacity = Math.max(capacity, entryDirectory.length + (entryDirectory.length >> 1));
+        entryDirectory = Arrays.copyOf(entryDirectory, newCapacity);
+        entryNameEnd = Arrays.copyOf(entryNameEnd, newCapacity);
+        if (digestLength > 0) {
+            digests = Arrays.copyOf(digests, newCapacity * digestLength);
+        }
+    }
+
+    private void ensureNamesCapacity(final int capacity) {
+        if (capacity > names.length) {
+            names = Arrays.copyOf(names, Math.max(capacity, names.length + (names.length >> 1)));
+        }
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+        }
+    }
+
+    // endregion
+}
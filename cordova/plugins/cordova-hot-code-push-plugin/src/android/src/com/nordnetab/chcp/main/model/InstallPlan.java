@@ -0,0 +1,174 @@
+package com.nordnetab.chcp.main.model;
+
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model for the installation plan of the update.
+ * Plan is created by the update loader, when all files are downloaded, and stored in the download folder.
+ * It holds the difference between the current and the new release, so installer doesn't need
+ * to load both manifests and compare them again.
+ * <p/>
+ * Plan is bound to the releases, between which it was calculated. If current release has changed
+ * since the update was loaded - plan is outdated and should not be used.
+ *
+ * @see ManifestDiff
+ */
+public class InstallPlan {
+
+    // keys to parse json
+    private static class JsonKeys {
+        public static final String FROM_RELEASE = "from";
+        public static final String TO_RELEASE = "to";
+        public static final String ADDED = "added";
+        public static final String CHANGED = "changed";
+        public static final String DELETED = "deleted";
+        public static final String FILE_PATH = "file";
+        public static final String FILE_HASH = "hash";
+        public static final String FILE_SIZE = "size";
+    }
+
+    private final String fromRelease;
+    private final String toRelease;
+    private final ManifestDiff diff;
+    private final Map<String, Long> fileSizes;
+
+    /**
+     * Class constructor.
+     *
+     * @param fromRelease release, from which we are updating
+     * @param toRelease   release, to which we are updating
+     * @param diff        difference between manifests of the releases
+     */
+    public InstallPlan(String fromRelease, String toRelease, ManifestDiff diff) {
+        this.fromRelease = fromRelease;
+        this.toRelease = toRelease;
+        this.diff = diff;
+        this.fileSizes = new HashMap<String, Long>();
+    }
+
+    /**
+     * Create instance of the object from JSON string.
+     *
+     * @param json JSON string
+     * @return install plan; <code>null</code> - if JSON is malformed
+     */
+    public static InstallPlan fromJson(final String json) {
+        try {
+            final JsonNode planNode = new ObjectMapper().readTree(json);
+            final InstallPlan plan = new InstallPlan(planNode.get(JsonKeys.FROM_RELEASE).asText(),
+                    planNode.get(JsonKeys.TO_RELEASE).asText(), new ManifestDiff());
+
+            plan.readFiles(planNode.get(JsonKeys.ADDED), plan.diff.addedFiles());
+            plan.readFiles(planNode.get(JsonKeys.CHANGED), plan.diff.changedFiles());
+            plan.readFiles(planNode.get(JsonKeys.DELETED), plan.diff.deletedFiles());
+
+            return plan;
+        } catch (Exception e) {
+            Log.d("CHCP", "Failed to read install plan", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * Check if plan describes installation of the given release over the given release.
+     *
+     * @param currentRelease release, that is currently installed
+     * @param newRelease     release, that we want to install
+     * @return <code>true</code> if plan can be used; <code>false</code> - if it is outdated
+     */
+    public boolean isFor(final String currentRelease, final String newRelease) {
+        return fromRelease.equals(currentRelease) && toRelease.equals(newRelease);
+    }
+
+    /**
+     * Getter for the difference between the releases.
+     *
+     * @return manifest difference
+     */
+    public ManifestDiff getDiff() {
+        return diff;
+    }
+
+    /**
+     * Remember size of the loaded file.
+     *
+     * @param fileName relative path to the file
+     * @param size     size of the file in bytes
+     */
+    public void setFileSize(final String fileName, final long size) {
+        fileSizes.put(fileName, size);
+    }
+
+    /**
+     * Getter for the size of the loaded file.
+     * Allows to detect corrupted file without calculating it's hash.
+     *
+     * @param fileName relative path to the file
+     * @return size of the file in bytes; <code>-1</code> - if unknown
+     */
+    public long getFileSize(final String fileName) {
+        final Long size = fileSizes.get(fileName);
+
+        return size != null ? size : -1;
+    }
+
+    /**
+     * Convert object into JSON string.
+     *
+     * @return JSON string
+     */
+    @Override
+    public String toString() {
+        final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+        final ObjectNode planNode = nodeFactory.objectNode();
+        planNode.set(JsonKeys.FROM_RELEASE, nodeFactory.textNode(fromRelease));
+        planNode.set(JsonKeys.TO_RELEASE, nodeFactory.textNode(toRelease));
+        writeFiles(planNode.putArray(JsonKeys.ADDED), diff.addedFiles());
+        writeFiles(planNode.putArray(JsonKeys.CHANGED), diff.changedFiles());
+        writeFiles(planNode.putArray(JsonKeys.DELETED), diff.deletedFiles());
+
+        return planNode.toString();
+    }
+
+    // region Private API
+
+    private void readFiles(final JsonNode filesNode, final List<ManifestFile> files) {
+        if (filesNode == null) {
+            return;
+        }
+
+        for (JsonNode fileNode : filesNode) {
+            final String fileName = fileNode.get(JsonKeys.FILE_PATH).asText();
+            files.add(new ManifestFile(fileName, fileNode.get(JsonKeys.FILE_HASH).asText()));
+            if (fileNode.has(JsonKeys.FILE_SIZE)) {
+                fileSizes.put(fileName, fileNode.get(JsonKeys.FILE_SIZE).asLong());
+            }
+        }
+    }
+
+    private void writeFiles(final ArrayNode filesNode, final List<ManifestFile> files) {
+        for (ManifestFile file : files) {
+            final ObjectNode fileNode = filesNode.addObject();
+            fileNode.put(JsonKeys.FILE_PATH, file.name);
+            fileNode.put(JsonKeys.FILE_HASH, file.hash);
+
+            final Long size = fileSizes.get(file.name);
+            if (size != null) {
+                fileNode.put(JsonKeys.FILE_SIZE, size.longValue());
+            }
+        }
+    }
+
+    // endregion
+}
@@ -0,0 +1,314 @@
+package com.nordnetab.chcp.main.model;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.nordnetab.chcp.main.utils.FilesUtility;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Web content of the release, that can be stored as a layer on top of the other release.
+ * <p/>
+ * Layered release keeps in it's www folder only the files, that were changed or added by it.
+ * Next to the www folder it has a layer file: version of the parent release and the list of the files,
+ * that were deleted by the release. Every other file is taken from the parent release, which can be a layer itself.
+ * The bottom of the chain is always a full release, that was installed from the assets or without layers.
+ * <p/>
+ * Layer file has the format:
+ * <pre>
+ * parent parent_release_version
+ * deleted relative_path
+ * ...
+ * </pre>
+ */
+public class LayeredRelease {
+
+    /**
+     * Name of the layer file in the content folder of the release.
+     */
+    public static final String LAYER_FILE_NAME = "chcp.layer";
+
+    private static final String PARENT_KEY = "parent ";
+    private static final String DELETED_KEY = "deleted ";
+
+    // protection from the broken layer files, that point to each other
+    private static final int MAX_LAYERS_COUNT = 64;
+
+    private final List<Layer> layers;
+    private final boolean isComplete;
+
+    /**
+     * Load release with all it's parent layers.
+     * If chain of the layers is broken - release is marked as incomplete, and it should not be used.
+     *
+     * @param context        application context
+     * @param releaseVersion version of the release
+     * @return layered release; if release has no layer file - it consists of it's own www folder only
+     * @see #isComplete()
+     */
+    public static LayeredRelease load(final Context context, final String releaseVersion) {
+        final List<Layer> layers = new ArrayList<Layer>();
+        final Set<String> loadedVersions = new HashSet<String>();
+
+        String version = releaseVersion;
+        while (!TextUtils.isEmpty(version)) {
+            if (!loadedVersions.add(version) || layers.size() >= MAX_LAYERS_COUNT) {
+                Log.d("CHCP", "Layers of the release " + releaseVersion + " point to each other");
+                return new LayeredRelease(layers, false);
+            }
+
+            final PluginFilesStructure releaseFS = new PluginFilesStructure(context, version);
+            final Layer layer = new Layer(version, releaseFS.getWwwFolder());
+            layers.add(layer);
+
+            try {
+                version = readLayerFile(new File(releaseFS.getContentFolder(), LAYER_FILE_NAME), layer.deletedFiles);
+            } catch (IOException e) {
+                Log.d("CHCP", "Failed to read layer file of the release " + layer.version, e);
+                return new LayeredRelease(layers, false);
+            }
+
+            if (version != null && !new File(new PluginFilesStructure(context, version).getWwwFolder()).exists()) {
+                Log.d("CHCP", "Parent release " + version + " of the release " + layer.version + " is missing");
+                return new LayeredRelease(layers, false);
+            }
+        }
+
+        return new LayeredRelease(layers, true);
+    }
+
+    /**
+     * Store release as a layer on top of the parent release.
+     * Should be called before the www folder of the release is created.
+     *
+     * @param releaseFS     file structure of the release
+     * @param parentVersion version of the parent release
+     * @param deletedFiles  relative paths of the parent files, that are removed by the release
+     * @throws IOException if failed to write layer file
+     */
+    public static void createLayer(final PluginFilesStructure releaseFS, final String parentVersion,
+                                   final Collection<String> deletedFiles) throws IOException {
+        final File layerFile = new File(releaseFS.getContentFolder(), LAYER_FILE_NAME);
+        final File tmpFile = new File(layerFile.getAbsolutePath() + ".tmp");
+        FilesUtility.ensureDirectoryExists(layerFile.getParentFile());
+
+        final StringBuilder content = new StringBuilder();
+        content.append(PARENT_KEY).append(parentVersion).append('\n');
+        for (String deletedFile : deletedFiles) {
+            content.append(DELETED_KEY).append(deletedFile).append('\n');
+        }
+
+        final OutputStream output = new FileOutputStream(tmpFile);
+        try {
+            output.write(content.toString().getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+
+        if (!tmpFile.renameTo(layerFile)) {
+            FilesUtility.delete(tmpFile);
+            throw new IOException("Failed to create layer file for " + releaseFS.getContentFolder());
+        }
+    }
+
+    /**
+     * Turn release back into the full one.
+     * Should be called only when all files of the parent layers are placed into the www folder of the release.
+     *
+     * @param releaseFS file structure of the release
+     */
+    public static void removeLayer(final PluginFilesStructure releaseFS) {
+        FilesUtility.delete(new File(releaseFS.getContentFolder(), LAYER_FILE_NAME));
+    }
+
+    private LayeredRelease(final List<Layer> layers, final boolean isComplete) {
+        this.layers = layers;
+        this.isComplete = isComplete;
+    }
+
+    /**
+     * Check if all layers of the release are in place.
+     * Release, which parent is missing, has lost some of it's files: it can't be shown, updated or compacted,
+     * and should be replaced by the previous release or the bundled content.
+     *
+     * @return <code>true</code> if release has all it's layers; <code>false</code> - if chain of the layers is broken
+     */
+    public boolean isComplete() {
+        return isComplete;
+    }
+
+    /**
+     * Check if release depends on the other releases.
+     *
+     * @return <code>true</code> if release is a layer; <code>false</code> - if it has all files in it's www folder
+     */
+    public boolean isLayered() {
+        return layers.size() > 1;
+    }
+
+    /**
+     * Getter for the number of layers, from which content of the release is taken.
+     *
+     * @return layers count; <code>1</code> for the full release
+     */
+    public int getLayersCount() {
+        return layers.size();
+    }
+
+    /**
+     * Getter for the versions of the releases, on which this release depends, including itself.
+     * None of them can be removed while this release is used.
+     *
+     * @return versions of the layers, starting from the top one
+     */
+    public List<String> getVersions() {
+        final List<String> versions = new ArrayList<String>(layers.size());
+        for (Layer layer : layers) {
+            versions.add(layer.version);
+        }
+
+        return versions;
+    }
+
+    /**
+     * Getter for the www folder of the top layer.
+     * All web content urls of the release are built from it.
+     *
+     * @return absolute path to the www folder
+     */
+    public String getWwwFolder() {
+        return layers.isEmpty() ? null : layers.get(0).wwwFolder;
+    }
+
+    /**
+     * Find the layer, that holds the file.
+     *
+     * @param relativePath path to the file inside the www folder
+     * @return file from the top most layer, that has it; <code>null</code> - if file is missing or deleted
+     */
+    public File resolve(final String relativePath) {
+        for (Layer layer : layers) {
+            final File file = new File(layer.wwwFolder, relativePath);
+            if (file.isFile()) {
+                return file;
+            }
+
+            if (layer.deletedFiles.contains(relativePath)) {
+                return null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Walk through all files of the release.
+     * Each file is visited once, from the top most layer, that has it. Deleted files are not visited.
+     *
+     * @param visitor visitor of the files
+     * @throws IOException if visitor failed to process the file
+     */
+    public void visitFiles(final FileVisitor visitor) throws IOException {
+        final Set<String> visitedFiles = new HashSet<String>();
+        final Set<String> deletedFiles = new HashSet<String>();
+        for (Layer layer : layers) {
+            visitFolder(new File(layer.wwwFolder), "", visitedFiles, deletedFiles, visitor);
+            deletedFiles.addAll(layer.deletedFiles);
+        }
+    }
+
+    /**
+     * Visitor of the release files.
+     *
+     * @see #visitFiles(FileVisitor)
+     */
+    public interface FileVisitor {
+
+        /**
+         * Process the file.
+         *
+         * @param relativePath path to the file inside the www folder
+         * @param file         file in the layer, that holds it
+         * @throws IOException if failed to process the file
+         */
+        void visitFile(String relativePath, File file) throws IOException;
+    }
+
+    // region Private API
+
+    private static void visitFolder(final File folder, final String relativePath, final Set<String> visitedFiles,
+                                    final Set<String> deletedFiles, final FileVisitor visitor) throws IOException {
+        final String[] names = folder.list();
+        if (names == null) {
+            return;
+        }
+
+        for (String name : names) {
+            final File file = new File(folder, name);
+            final String filePath = relativePath + name;
+            if (file.isDirectory()) {
+                visitFolder(file, filePath + "/", visitedFiles, deletedFiles, visitor);
+            } else if (!deletedFiles.contains(filePath) && visitedFiles.add(filePath)) {
+                visitor.visitFile(filePath, file);
+            }
+        }
+    }
+
+    /**
+     * Read the layer file.
+     *
+     * @param layerFile    layer file
+     * @param deletedFiles set, into which deleted files are added
+     * @return version of the parent release; <code>null</code> - if release is not a layer
+     * @throws IOException if layer file exists, but can't be read
+     */
+    private static String readLayerFile(final File layerFile, final Set<String> deletedFiles) throws IOException {
+        if (!layerFile.exists()) {
+            return null;
+        }
+
+        String parentVersion = null;
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(layerFile), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(PARENT_KEY)) {
+                    parentVersion = line.substring(PARENT_KEY.length());
+                } else if (line.startsWith(DELETED_KEY)) {
+                    deletedFiles.add(line.substring(DELETED_KEY.length()));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return TextUtils.isEmpty(parentVersion) ? null : parentVersion;
+    }
+
+    // endregion
+
+    private static class Layer {
+        final String version;
+        final String wwwFolder;
+        final Set<String> deletedFiles;
+
+        Layer(String version, String wwwFolder) {
+            this.version = version;
+            this.wwwFolder = wwwFolder;
+            this.deletedFiles = new HashSet<String>();
+        }
+    }
+}
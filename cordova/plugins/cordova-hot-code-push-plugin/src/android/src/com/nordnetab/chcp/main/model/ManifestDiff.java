@@ -10,7 +10,7 @@ import java.util.List;
  *
  * @see ManifestFile
  */
-public class ManifestDiff {
+public class ManifestDiff implements ManifestDiffSink {
 
     private List<ManifestFile> deleted;
     private List<ManifestFile> changed;
@@ -52,6 +52,21 @@ public class ManifestDiff {
         return added;
     }
 
+    @Override
+    public void onFileAdded(ManifestFile file) {
+        added.add(file);
+    }
+
+    @Override
+    public void onFileChanged(ManifestFile file) {
+        changed.add(file);
+    }
+
+    @Override
+    public void onFileDeleted(ManifestFile file) {
+        deleted.add(file);
+    }
+
     /**
      * Check if there is any difference between the manifest files.
      *
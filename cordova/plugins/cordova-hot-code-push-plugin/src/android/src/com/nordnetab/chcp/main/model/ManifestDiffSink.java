@@ -0,0 +1,33 @@
+package com.nordnetab.chcp.main.model;
+
+/**
+ * Receiver of the manifest difference.
+ * Used, when difference is calculated in a streaming way, so it could be processed as soon
+ * as each file is compared, without waiting for the whole manifests to be read.
+ *
+ * @see ManifestDiff
+ * @see SortedManifestMerge
+ */
+public interface ManifestDiffSink {
+
+    /**
+     * File is found only in the new manifest.
+     *
+     * @param file added file
+     */
+    void onFileAdded(ManifestFile file);
+
+    /**
+     * File is in both manifests, but it's hash has changed.
+     *
+     * @param file new version of the file
+     */
+    void onFileChanged(ManifestFile file);
+
+    /**
+     * File is found only in the old manifest.
+     *
+     * @param file deleted file
+     */
+    void onFileDeleted(ManifestFile file);
+}
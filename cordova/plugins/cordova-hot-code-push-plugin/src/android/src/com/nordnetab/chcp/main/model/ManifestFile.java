@@ -46,6 +46,6 @@ public class ManifestFile {
 
     @Override
     public int hashCode() {
-        return super.hashCode();
+        return 31 * name.hashCode() + hash.hashCode();
     }
 }
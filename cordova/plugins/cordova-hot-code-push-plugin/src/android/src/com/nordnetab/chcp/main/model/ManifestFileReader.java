@@ -0,0 +1,19 @@
+package com.nordnetab.chcp.main.model;
+
+import java.io.IOException;
+
+/**
+ * Source of the manifest files, that are read one by one.
+ *
+ * @see SortedManifestMerge
+ */
+public interface ManifestFileReader {
+
+    /**
+     * Read next file.
+     *
+     * @return next file; <code>null</code> - if there are no more files
+     * @throws IOException if failed to read the file
+     */
+    ManifestFile readNext() throws IOException;
+}
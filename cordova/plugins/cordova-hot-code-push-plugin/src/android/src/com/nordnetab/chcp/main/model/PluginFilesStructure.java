@@ -22,6 +22,36 @@ public class PluginFilesStructure {
      */
     public static final String MANIFEST_FILE_NAME = "chcp.manifest";
 
+    /**
+     * Name of the file, in which manifest is stored on the device in binary form.
+     */
+    public static final String BINARY_MANIFEST_FILE_NAME = "chcp.manifest.bin";
+
+    /**
+     * Name of the file with HTTP validators of the application config and content manifest.
+     */
+    public static final String VALIDATORS_FILE_NAME = "chcp.validators";
+
+    /**
+     * Name of the download journal file, that is stored in the download folder while update is loading.
+     */
+    public static final String DOWNLOAD_JOURNAL_FILE_NAME = "chcp.download.journal";
+
+    /**
+     * Name of the installation journal file, that is stored in the content folder of the release while update is installing.
+     */
+    public static final String INSTALL_JOURNAL_FILE_NAME = "chcp.install.journal";
+
+    /**
+     * Name of the installation plan file, that is stored in the download folder when update is loaded.
+     */
+    public static final String INSTALL_PLAN_FILE_NAME = "chcp.install.plan";
+
+    /**
+     * Name of the file hash index, that is stored in the download folder when update is loaded.
+     */
+    public static final String HASH_INDEX_FILE_NAME = "chcp.hashes";
+
     private static final String PLUGIN_FOLDER = "cordova-hot-code-push-plugin";
 
     private static final String MAIN_CONTENT_FOLDER = "www";
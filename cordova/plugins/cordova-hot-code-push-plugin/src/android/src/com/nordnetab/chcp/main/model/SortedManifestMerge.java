@@ -0,0 +1,148 @@
+package com.nordnetab.chcp.main.model;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Calculates difference between two manifests in a single pass, when both of them are sorted by path.
+ * Files are read one by one, compared and reported to the sink immediately, so only the current file
+ * of each manifest is kept in memory.
+ * <p/>
+ * Paths are compared by unicode code points, which is the same as the order of their UTF-8 bytes.
+ * Repeated paths are handled in the same way, as by the in-memory comparison: each entry of the old manifest
+ * is compared with the first entry of the new one, and each entry of the path, that exists only in one
+ * of the manifests, is reported.
+ * If any of the manifests turns out to be not sorted - merge is stopped, and the caller should discard
+ * already received events and fall back to the in-memory comparison.
+ *
+ * @see ManifestDiffSink
+ */
+public class SortedManifestMerge {
+
+    private final ManifestFileReader oldFiles;
+    private final ManifestFileReader newFiles;
+    private final ManifestDiffSink sink;
+
+    private ManifestFile oldFile;
+    private ManifestFile newFile;
+    private boolean isSorted;
+
+    /**
+     * Merge two sorted manifests.
+     *
+     * @param oldFiles files of the old manifest
+     * @param newFiles files of the new manifest
+     * @param sink     where to report the difference
+     * @return <code>true</code> if manifests are merged; <code>false</code> - if one of them is not sorted
+     * @throws IOException if failed to read the files
+     */
+    public static boolean merge(final ManifestFileReader oldFiles, final ManifestFileReader newFiles,
+                                final ManifestDiffSink sink) throws IOException {
+        return new SortedManifestMerge(oldFiles, newFiles, sink).run();
+    }
+
+    /**
+     * Create reader for the list of files.
+     *
+     * @param files files to read
+     * @return reader
+     */
+    public static ManifestFileReader readerOf(final Iterable<ManifestFile> files) {
+        final Iterator<ManifestFile> iterator = files.iterator();
+
+        return new ManifestFileReader() {
+            @Override
+            public ManifestFile readNext() {
+                return iterator.hasNext() ? iterator.next() : null;
+            }
+        };
+    }
+
+    /**
+     * Compare two paths by their unicode code points.
+     *
+     * @param lhs first path
+     * @param rhs second path
+     * @return negative number, zero or positive number if first path is less, equal or greater than the second one
+     */
+    public static int comparePaths(final String lhs, final String rhs) {
+        final int length = Math.min(lhs.length(), rhs.length());
+        for (int i = 0; i < length; i++) {
+            final char lhsChar = lhs.charAt(i);
+            final char rhsChar = rhs.charAt(i);
+            if (lhsChar == rhsChar) {
+                continue;
+            }
+
+            // surrogates encode code points above all the other chars
+            final boolean isLhsSurrogate = isSurrogate(lhsChar);
+            final boolean isRhsSurrogate = isSurrogate(rhsChar);
+            if (isLhsSurrogate != isRhsSurrogate) {
+                return isLhsSurrogate ? 1 : -1;
+            }
+
+            return lhsChar - rhsChar;
+        }
+
+        return lhs.length() - rhs.length();
+    }
+
+    private static boolean isSurrogate(final char c) {
+        return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+    }
+
+    private SortedManifestMerge(final ManifestFileReader oldFiles, final ManifestFileReader newFiles,
+                                final ManifestDiffSink sink) {
+        this.oldFiles = oldFiles;
+        this.newFiles = newFiles;
+        this.sink = sink;
+        this.isSorted = true;
+    }
+
+    private boolean run() throws IOException {
+        oldFile = nextFile(oldFiles, null);
+        newFile = nextFile(newFiles, null);
+
+        while (isSorted && (oldFile != null || newFile != null)) {
+            final int comparison;
+            if (oldFile == null) {
+                comparison = 1;
+            } else if (newFile == null) {
+                comparison = -1;
+            } else {
+                comparison = comparePaths(oldFile.name, newFile.name);
+            }
+
+            if (comparison < 0) {
+                sink.onFileDeleted(oldFile);
+                oldFile = nextFile(oldFiles, oldFile);
+            } else if (comparison > 0) {
+                sink.onFileAdded(newFile);
+                newFile = nextFile(newFiles, newFile);
+            } else {
+                // every old entry of the path is compared with the first new one; the rest of the new entries are not added
+                final ManifestFile firstNewFile = newFile;
+                while (isSorted && oldFile != null && oldFile.name.equals(firstNewFile.name)) {
+                    if (!oldFile.hash.equals(firstNewFile.hash)) {
+                        sink.onFileChanged(firstNewFile);
+                    }
+                    oldFile = nextFile(oldFiles, oldFile);
+                }
+                while (isSorted && newFile != null && newFile.name.equals(firstNewFile.name)) {
+                    newFile = nextFile(newFiles, newFile);
+                }
+            }
+        }
+
+        return isSorted;
+    }
+
+    private ManifestFile nextFile(final ManifestFileReader reader, final ManifestFile previous) throws IOException {
+        final ManifestFile file = reader.readNext();
+        if (file != null && previous != null && comparePaths(previous.name, file.name) > 0) {
+            isSorted = false;
+        }
+
+        return file;
+    }
+}
@@ -21,6 +21,17 @@ public class ApplicationConfigDownloader extends JsonDownloader<ApplicationConfi
         super(url);
     }
 
+    /**
+     * Class constructor
+     *
+     * @param url        url from where to download application config
+     * @param validators validators of the previous download, used to make request conditional
+     * @see ResponseValidators
+     */
+    public ApplicationConfigDownloader(String url, ResponseValidators validators) {
+        super(url, validators);
+    }
+
     @Override
     protected ApplicationConfig createInstance(String json) {
         return ApplicationConfig.fromJson(json);
@@ -0,0 +1,197 @@
+package com.nordnetab.chcp.main.network;
+
+import android.util.Log;
+
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.utils.FilesUtility;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
+import com.nordnetab.chcp.main.utils.Hasher;
+import com.nordnetab.chcp.main.utils.Hex;
+import com.nordnetab.chcp.main.utils.URLUtility;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Helper class to load update files as a single zip archive.
+ * Archive is extracted while it is being loaded, so it is never stored on the disk.
+ * Only entries, that are in the list of the requested files, are extracted; each of them is hashed
+ * and checked against the manifest. Files, that are missing in the archive or corrupted, are returned back
+ * to the caller, so they could be loaded one by one.
+ *
+ * @see ParallelFileDownloader
+ */
+public class ArchiveDownloader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HashAlgorithm hashAlgorithm;
+
+    /**
+     * Class constructor.
+     * Hashes of the files are calculated with MD5.
+     */
+    public ArchiveDownloader() {
+        this(HashAlgorithm.MD5);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param hashAlgorithm algorithm, with which hashes of the files are calculated
+     */
+    public ArchiveDownloader(final HashAlgorithm hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    /**
+     * Download archive and extract requested files from it.
+     *
+     * @param downloadFolder absolute path to the folder, where extracted files should be placed
+     * @param archiveUrl     url of the archive
+     * @param files          list of files to extract
+     * @param journal        journal of the download, in which extracted files are marked as loaded; can be <code>null</code>
+     * @return list of files, that were not extracted from the archive
+     * @throws InterruptedIOException if download was cancelled
+     */
+    public List<ManifestFile> downloadFiles(final String downloadFolder, final String archiveUrl, final List<ManifestFile> files,
+                                            final DownloadJournal journal) throws InterruptedIOException {
+        final Map<String, ManifestFile> pendingFiles = new HashMap<String, ManifestFile>();
+        for (ManifestFile file : files) {
+            if (journal == null || !journal.isCompleted(file)) {
+                pendingFiles.put(file.name, file);
+            }
+        }
+
+        if (pendingFiles.isEmpty()) {
+            return new ArrayList<ManifestFile>();
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final int requestedCount = pendingFiles.size();
+        try {
+            extract(downloadFolder, archiveUrl, pendingFiles, journal);
+        } catch (InterruptedIOException e) {
+            throw e;
+        } catch (IOException e) {
+            Log.d("CHCP", "Failed to load archive " + archiveUrl + ": " + e.getMessage());
+        }
+
+        Log.d("CHCP", "Extracted " + (requestedCount - pendingFiles.size()) + " of " + requestedCount
+                + " files from archive in " + (System.currentTimeMillis() - startTime) + " ms");
+
+        return new ArrayList<ManifestFile>(pendingFiles.values());
+    }
+
+    private void extract(final String downloadFolder, final String archiveUrl, final Map<String, ManifestFile> pendingFiles,
+                         final DownloadJournal journal) throws IOException {
+        Log.d("CHCP", "Loading archive: " + archiveUrl);
+
+        final URL url = URLUtility.stringToUrl(archiveUrl);
+        if (url == null) {
+            throw new IOException("Invalid url format");
+        }
+
+        final ConnectionPool connectionPool = ConnectionPool.getInstance();
+        final HttpURLConnection connection = connectionPool.openConnection(url);
+        CountingInputStream rawInput = null;
+        ZipInputStream zipInput = null;
+        boolean isFullyRead = false;
+        long decodedBytesCount = 0;
+        try {
+            final int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Server responded with code " + responseCode);
+            }
+
+            rawInput = new CountingInputStream(connection.getInputStream());
+            zipInput = new ZipInputStream(new BufferedInputStream(rawInput));
+            final byte[] buffer = new byte[BUFFER_SIZE];
+
+            ZipEntry entry;
+            while ((entry = zipInput.getNextEntry()) != null) {
+                final ManifestFile file = entry.isDirectory() ? null : pendingFiles.get(entry.getName());
+                if (file == null) {
+                    continue;
+                }
+
+                final File extractedFile = new File(downloadFolder, file.name);
+                final long size = extractEntry(zipInput, extractedFile, file, buffer);
+                if (size < 0) {
+                    continue;
+                }
+
+                decodedBytesCount += size;
+                pendingFiles.remove(file.name);
+                if (journal != null) {
+                    journal.markCompleted(file);
+                }
+            }
+            isFullyRead = true;
+        } finally {
+            if (isFullyRead) {
+                connectionPool.releaseConnection(connection, zipInput);
+            } else {
+                connectionPool.discardConnection(connection);
+            }
+        }
+
+        Log.d("CHCP", "Loaded archive " + archiveUrl + ": " + decodedBytesCount + " bytes extracted, "
+                + rawInput.getCount() + " bytes transferred");
+    }
+
+    /**
+     * Write current entry of the archive on the disk and check it's hash.
+     *
+     * @return size of the extracted file; <code>-1</code> - if file is corrupted
+     */
+    private long extractEntry(final ZipInputStream zipInput, final File extractedFile, final ManifestFile file,
+                              final byte[] buffer) throws IOException {
+        FilesUtility.delete(extractedFile);
+        FilesUtility.ensureDirectoryExists(extractedFile.getParentFile());
+
+        final Hasher hasher = hashAlgorithm.newHasher();
+        final OutputStream output = new BufferedOutputStream(new FileOutputStream(extractedFile));
+        long size = 0;
+        try {
+            int count;
+            while ((count = zipInput.read(buffer)) != -1) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Download of the archive has been cancelled");
+                }
+
+                output.write(buffer, 0, count);
+                hasher.write(buffer, count);
+                size += count;
+            }
+        } catch (IOException e) {
+            hasher.release();
+            throw e;
+        } finally {
+            output.close();
+        }
+
+        final byte[] extractedFileDigest = hasher.calculateDigest();
+        if (!Hex.matches(extractedFileDigest, file.hash)) {
+            Log.d("CHCP", "File " + file.name + " in archive is corrupted: checksum " + file.hash
+                    + " doesn't match hash " + Hex.encode(extractedFileDigest));
+            FilesUtility.delete(extractedFile);
+            return -1;
+        }
+
+        return size;
+    }
+}
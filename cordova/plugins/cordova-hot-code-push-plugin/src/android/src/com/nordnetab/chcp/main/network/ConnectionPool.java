@@ -0,0 +1,98 @@
+package com.nordnetab.chcp.main.network;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Shared HTTP client layer, through which plugin loads application config, content manifest and all content files.
+ * <p/>
+ * Connections are kept alive and reused for the requests to the same host: sockets are stored in the
+ * HttpURLConnection keep-alive cache, and they are returned there only when the response body is
+ * fully consumed and the stream is closed. That is what this class takes care of.
+ * Keep-alive is enabled by default, so global <code>http.*</code> system properties are not changed:
+ * they would affect every other HTTP client of the application.
+ */
+public class ConnectionPool {
+
+    private static final int CONNECT_TIMEOUT = 30 * 1000;
+    private static final int READ_TIMEOUT = 30 * 1000;
+    private static final int DRAIN_BUFFER_SIZE = 8192;
+
+    private static ConnectionPool sharedInstance;
+
+    /**
+     * Getter for the shared instance of the pool.
+     *
+     * @return connection pool
+     */
+    public static synchronized ConnectionPool getInstance() {
+        if (sharedInstance == null) {
+            sharedInstance = new ConnectionPool();
+        }
+
+        return sharedInstance;
+    }
+
+    private ConnectionPool() {
+    }
+
+    /**
+     * Open connection to the given url.
+     * When you are done with it - you must call either {@link #releaseConnection(HttpURLConnection, InputStream)},
+     * or {@link #discardConnection(HttpURLConnection)}.
+     *
+     * @param url url to connect to
+     * @return opened connection
+     * @throws IOException if connection can't be opened
+     */
+    public HttpURLConnection openConnection(final URL url) throws IOException {
+        final URLConnection urlConnection = url.openConnection();
+        if (!(urlConnection instanceof HttpURLConnection)) {
+            throw new IOException("Only HTTP connections are supported: " + url);
+        }
+
+        final HttpURLConnection connection = (HttpURLConnection) urlConnection;
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setRequestProperty("Connection", "keep-alive");
+
+        return connection;
+    }
+
+    /**
+     * Return connection back to the pool.
+     * Remaining response body is read out and the stream is closed, so the socket could be reused.
+     *
+     * @param connection     connection to release
+     * @param responseStream response stream of the connection; can be <code>null</code>
+     */
+    public void releaseConnection(final HttpURLConnection connection, final InputStream responseStream) {
+        try {
+            InputStream input = responseStream;
+            if (input == null) {
+                input = connection.getInputStream();
+            }
+
+            final byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            while (input.read(buffer) != -1) {
+                // skip the rest of the body
+            }
+            input.close();
+        } catch (IOException e) {
+            discardConnection(connection);
+        }
+    }
+
+    /**
+     * Close connection without returning it to the pool.
+     * Used, when request failed or response is not read to the end.
+     *
+     * @param connection connection to close
+     */
+    public void discardConnection(final HttpURLConnection connection) {
+        connection.disconnect();
+    }
+}
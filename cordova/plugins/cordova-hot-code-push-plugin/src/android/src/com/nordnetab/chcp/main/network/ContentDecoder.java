@@ -0,0 +1,82 @@
+package com.nordnetab.chcp.main.network;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Helper class for the compressed transfer of the HTTP responses.
+ * Negotiates gzip/deflate encoding with the server and decompresses response body on the fly,
+ * so the data is never stored in compressed form.
+ */
+class ContentDecoder {
+
+    private static final String ENCODING_GZIP = "gzip";
+    private static final String ENCODING_DEFLATE = "deflate";
+    private static final String ENCODING_IDENTITY = "identity";
+
+    private ContentDecoder() {
+    }
+
+    /**
+     * Tell the server, that we accept compressed response.
+     *
+     * @param connection connection, that is not yet connected
+     */
+    static void requestCompression(final HttpURLConnection connection) {
+        connection.setRequestProperty("Accept-Encoding", ENCODING_GZIP + ", " + ENCODING_DEFLATE);
+    }
+
+    /**
+     * Tell the server, that we want response as it is.
+     * Used for the Range requests, since byte ranges of the compressed data can't be merged with the local file.
+     *
+     * @param connection connection, that is not yet connected
+     */
+    static void requestIdentity(final HttpURLConnection connection) {
+        connection.setRequestProperty("Accept-Encoding", ENCODING_IDENTITY);
+    }
+
+    /**
+     * Wrap response stream into decompressing stream according to the Content-Encoding of the response.
+     *
+     * @param connection connection with the received response
+     * @param rawStream  stream of the response body as it comes from the network
+     * @return stream of the decompressed data
+     * @throws IOException if failed to read compression header
+     */
+    static InputStream decode(final HttpURLConnection connection, final InputStream rawStream) throws IOException {
+        final String encoding = connection.getContentEncoding();
+        if (ENCODING_GZIP.equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(rawStream);
+        }
+
+        if (ENCODING_DEFLATE.equalsIgnoreCase(encoding)) {
+            return inflaterStream(rawStream);
+        }
+
+        return rawStream;
+    }
+
+    /**
+     * Some servers send raw deflate data instead of zlib-wrapped one, as required by the spec.
+     * Detect it by the zlib header.
+     */
+    private static InputStream inflaterStream(final InputStream rawStream) throws IOException {
+        final InputStream input = new BufferedInputStream(rawStream);
+        input.mark(2);
+        final int firstByte = input.read();
+        final int secondByte = input.read();
+        input.reset();
+
+        final boolean isZlibWrapped = firstByte != -1 && secondByte != -1
+                && (firstByte & 0x0F) == 8
+                && ((firstByte << 8) | secondByte) % 31 == 0;
+
+        return new InflaterInputStream(input, new Inflater(!isZlibWrapped));
+    }
+}
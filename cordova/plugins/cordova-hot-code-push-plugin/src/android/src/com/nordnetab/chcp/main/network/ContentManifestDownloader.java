@@ -2,6 +2,9 @@ package com.nordnetab.chcp.main.network;
 
 import com.nordnetab.chcp.main.config.ContentManifest;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * Created by Nikolay Demyankov on 22.07.15.
  * <p/>
@@ -21,8 +24,24 @@ public class ContentManifestDownloader extends JsonDownloader<ContentManifest> {
         super(url);
     }
 
+    /**
+     * Class constructor
+     *
+     * @param url        url from where to download manifest
+     * @param validators validators of the previous download, used to make request conditional
+     * @see ResponseValidators
+     */
+    public ContentManifestDownloader(String url, ResponseValidators validators) {
+        super(url, validators);
+    }
+
     @Override
     protected ContentManifest createInstance(String json) {
         return ContentManifest.fromJson(json);
     }
+
+    @Override
+    protected ContentManifest createInstance(InputStream input) throws IOException {
+        return ContentManifest.fromJson(input);
+    }
 }
@@ -0,0 +1,65 @@
+package com.nordnetab.chcp.main.network;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream, that counts how many bytes were read through it.
+ * Used to find out the number of bytes, that were actually transferred over the network.
+ */
+class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    /**
+     * Class constructor
+     *
+     * @param in stream to read from
+     */
+    CountingInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Getter for the number of bytes, read from the stream.
+     *
+     * @return number of read bytes
+     */
+    long getCount() {
+        return count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int result = super.read();
+        if (result != -1) {
+            count++;
+        }
+
+        return result;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        final int result = super.read(buffer, offset, length);
+        if (result > 0) {
+            count += result;
+        }
+
+        return result;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long result = super.skip(n);
+        count += result;
+
+        return result;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
@@ -0,0 +1,237 @@
+package com.nordnetab.chcp.main.network;
+
+import android.util.Log;
+
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.model.PluginFilesStructure;
+import com.nordnetab.chcp.main.utils.FileHashIndex;
+import com.nordnetab.chcp.main.utils.FilesUtility;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
+import com.nordnetab.chcp.main.utils.Paths;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Journal of the update download.
+ * Stored in the download folder of the release and records, which files were started and which were completely
+ * loaded and verified. Using it we can continue interrupted download: verified files are skipped,
+ * and partially loaded files are resumed from the last byte on the disk.
+ * <p/>
+ * Journal is an append-only text file, each line of which has the format: <code>state hash file_name</code>.
+ * If application is killed while writing the line - it is ignored on the next load.
+ * <p/>
+ * Each verified file is also recorded in the hash index of the download folder together with it's size
+ * and modification time. Index outlives the journal, so the installer can trust the hashes, that were checked
+ * during the download, instead of reading the files again.
+ *
+ * @see ParallelFileDownloader
+ * @see FileHashIndex
+ */
+public class DownloadJournal {
+
+    private static final String STATE_STARTED = "started";
+    private static final String STATE_COMPLETED = "completed";
+
+    private final File journalFile;
+    private final String downloadFolder;
+    private final Map<String, String> startedFiles;
+    private final Map<String, String> completedFiles;
+    private final HashAlgorithm hashAlgorithm;
+    private FileHashIndex verifiedFiles;
+    private OutputStream output;
+
+    /**
+     * Check if there is an unfinished download in the given folder.
+     *
+     * @param downloadFolder absolute path to the download folder
+     * @return <code>true</code> if folder has a download journal; <code>false</code> - otherwise
+     */
+    public static boolean existsInFolder(final String downloadFolder) {
+        return new File(Paths.get(downloadFolder, PluginFilesStructure.DOWNLOAD_JOURNAL_FILE_NAME)).exists();
+    }
+
+    /**
+     * Open journal in the given download folder.
+     * If journal already exists - it's content is loaded; otherwise - new journal is created.
+     *
+     * @param downloadFolder absolute path to the download folder
+     * @param hashAlgorithm  algorithm, with which hashes of the files are calculated
+     * @return download journal
+     * @throws IOException if journal can't be opened
+     */
+    public static DownloadJournal openInFolder(final String downloadFolder, final HashAlgorithm hashAlgorithm) throws IOException {
+        final DownloadJournal journal = new DownloadJournal(downloadFolder, hashAlgorithm);
+        journal.load();
+        journal.output = new FileOutputStream(journal.journalFile, true);
+        journal.verifiedFiles = FileHashIndex.openInFolder(downloadFolder, PluginFilesStructure.HASH_INDEX_FILE_NAME);
+
+        return journal;
+    }
+
+    private DownloadJournal(final String downloadFolder, final HashAlgorithm hashAlgorithm) {
+        this.downloadFolder = downloadFolder;
+        this.hashAlgorithm = hashAlgorithm;
+        this.journalFile = new File(Paths.get(downloadFolder, PluginFilesStructure.DOWNLOAD_JOURNAL_FILE_NAME));
+        this.startedFiles = new HashMap<String, String>();
+        this.completedFiles = new HashMap<String, String>();
+    }
+
+    /**
+     * Check if file was already loaded and verified.
+     * File, that was changed on the disk since it was verified, is not considered loaded.
+     *
+     * @param file file to check
+     * @return <code>true</code> if file is loaded; <code>false</code> - otherwise
+     */
+    public synchronized boolean isCompleted(final ManifestFile file) {
+        return file.hash.equals(completedFiles.get(file.name)) && verifiedFiles != null
+                && file.hash.equals(verifiedFiles.getHash(file.name, hashAlgorithm));
+    }
+
+    /**
+     * Check if download of the file was started and can be continued.
+     *
+     * @param file file to check
+     * @return <code>true</code> if file is partially loaded; <code>false</code> - otherwise
+     */
+    public synchronized boolean isStarted(final ManifestFile file) {
+        return file.hash.equals(startedFiles.get(file.name));
+    }
+
+    /**
+     * Record, that we started to download the file.
+     *
+     * @param file file that is being loaded
+     * @throws IOException if failed to write into the journal
+     */
+    public synchronized void markStarted(final ManifestFile file) throws IOException {
+        completedFiles.remove(file.name);
+        startedFiles.put(file.name, file.hash);
+        append(STATE_STARTED, file);
+    }
+
+    /**
+     * Record, that file is loaded and it's hash is verified.
+     * Should be called right after the verification, so the recorded size and modification time belong to the checked content.
+     *
+     * @param file loaded file
+     * @throws IOException if failed to write into the journal
+     */
+    public synchronized void markCompleted(final ManifestFile file) throws IOException {
+        verifiedFiles.put(file.name, hashAlgorithm, file.hash);
+        startedFiles.remove(file.name);
+        completedFiles.put(file.name, file.hash);
+        append(STATE_COMPLETED, file);
+    }
+
+    /**
+     * Remove from the download folder files, that were recorded in the journal, but are not part of the update anymore.
+     * That might happen, if release on the server has changed since the last download attempt.
+     *
+     * @param updateFiles files that we are going to load
+     */
+    public synchronized void removeFilesNotInList(final List<ManifestFile> updateFiles) {
+        final Set<String> namesToKeep = new HashSet<String>();
+        for (ManifestFile file : updateFiles) {
+            namesToKeep.add(file.name);
+        }
+
+        final Set<String> recordedNames = new HashSet<String>(startedFiles.keySet());
+        recordedNames.addAll(completedFiles.keySet());
+        for (String name : recordedNames) {
+            if (namesToKeep.contains(name)) {
+                continue;
+            }
+
+            FilesUtility.delete(new File(downloadFolder, name));
+            startedFiles.remove(name);
+            completedFiles.remove(name);
+        }
+    }
+
+    /**
+     * Close the journal.
+     */
+    public synchronized void close() {
+        if (verifiedFiles != null) {
+            verifiedFiles.close();
+            verifiedFiles = null;
+        }
+
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        output = null;
+    }
+
+    /**
+     * Close and remove journal from the disk.
+     * Should be called, when download is finished. Hash index of the verified files is kept for the installer.
+     */
+    public synchronized void delete() {
+        close();
+        FilesUtility.delete(journalFile);
+    }
+
+    // region Private API
+
+    private void append(final String state, final ManifestFile file) throws IOException {
+        if (output == null) {
+            throw new IOException("Download journal is closed");
+        }
+
+        final String line = state + " " + file.hash + " " + file.name + "\n";
+        output.write(line.getBytes("UTF-8"));
+        output.flush();
+    }
+
+    private void load() throws IOException {
+        if (!journalFile.exists()) {
+            return;
+        }
+
+        final BufferedReader reader = new BufferedReader(new FileReader(journalFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    continue;
+                }
+
+                final String state = parts[0];
+                final String hash = parts[1];
+                final String name = parts[2];
+                if (STATE_STARTED.equals(state)) {
+                    completedFiles.remove(name);
+                    startedFiles.put(name, hash);
+                } else if (STATE_COMPLETED.equals(state)) {
+                    startedFiles.remove(name);
+                    completedFiles.put(name, hash);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Log.d("CHCP", "Found download journal: " + completedFiles.size() + " files loaded, " + startedFiles.size() + " files partially loaded");
+    }
+
+    // endregion
+}
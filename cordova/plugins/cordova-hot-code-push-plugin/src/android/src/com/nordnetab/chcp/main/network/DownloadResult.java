@@ -17,13 +17,28 @@ public class DownloadResult<T> {
      */
     public final Exception error;
 
+    /**
+     * Flag, that data on the server hasn't changed since the last download.
+     * In that case value is not loaded.
+     */
+    public final boolean isNotModified;
+
+    /**
+     * Create result for the case, when data on the server hasn't changed since the last download.
+     *
+     * @return download result without value and error
+     */
+    public static <T> DownloadResult<T> notModified() {
+        return new DownloadResult<T>(null, null, true);
+    }
+
     /**
      * Class constructor
      *
      * @param value loaded value
      */
     public DownloadResult(T value) {
-        this(value, null);
+        this(value, null, false);
     }
 
     /**
@@ -32,12 +47,13 @@ public class DownloadResult<T> {
      * @param error occurred error
      */
     public DownloadResult(Exception error) {
-        this(null, error);
+        this(null, error, false);
     }
 
-    private DownloadResult(T value, Exception error) {
+    private DownloadResult(T value, Exception error, boolean isNotModified) {
         this.value = value;
         this.error = error;
+        this.isNotModified = isNotModified;
 
     }
 }
\ No newline at end of file
@@ -3,20 +3,25 @@ package com.nordnetab.chcp.main.network;
 import android.util.Log;
 
 import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.patch.DeltaPatch;
 import com.nordnetab.chcp.main.utils.FilesUtility;
-import com.nordnetab.chcp.main.utils.MD5;
-import com.nordnetab.chcp.main.utils.Paths;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
+import com.nordnetab.chcp.main.utils.Hasher;
+import com.nordnetab.chcp.main.utils.Hex;
 import com.nordnetab.chcp.main.utils.URLUtility;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.List;
 
 /**
@@ -26,11 +31,14 @@ import java.util.List;
  */
 public class FileDownloader {
 
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
     /**
      * Download list of files.
-     * Full url to the file is constructed from the contentFolderUrl and ManifestFile#hash (relative path).
+     * Full url to the file is constructed from the contentFolderUrl and ManifestFile#name (relative path).
      * For each downloaded file we perform check of his hash. If it is different from the one, that provided
      * if ManifestFile#hash - exception will be thrown.
+     * Files are loaded concurrently with the default limits of the ParallelFileDownloader.
      * Download stops on any error.
      *
      * @param downloadFolder   absolute path to the folder, where downloaded files should be placed
@@ -38,13 +46,10 @@ public class FileDownloader {
      * @param files            list of files to download
      * @throws IOException
      * @see ManifestFile
+     * @see ParallelFileDownloader
      */
     public static void downloadFiles(final String downloadFolder, final String contentFolderUrl, List<ManifestFile> files) throws IOException {
-        for (ManifestFile file : files) {
-            String fileUrl = URLUtility.construct(contentFolderUrl, file.name);
-            String filePath = Paths.get(downloadFolder, file.name);
-            download(fileUrl, filePath, file.hash);
-        }
+        new ParallelFileDownloader().downloadFiles(downloadFolder, contentFolderUrl, files);
     }
 
     /**
@@ -56,39 +61,248 @@ public class FileDownloader {
      * @throws IOException
      */
     public static void download(String urlFrom, String filePath, String checkSum) throws IOException {
+        download(urlFrom, filePath, checkSum, false);
+    }
+
+    /**
+     * Download file from server, save it on the disk and check his hash.
+     * If resume is allowed and part of the file is already on the disk - only the rest of it is requested
+     * from the server through the Range header. If server ignores the Range - file is loaded from the start.
+     * If loaded file is corrupted - it is removed from the disk.
+     * If server supports it - file is transferred compressed with gzip or deflate, and decompressed while loading;
+     * checksum is calculated over the decompressed data.
+     *
+     * @param urlFrom     url to download from
+     * @param filePath    where to save file
+     * @param checkSum    checksum of the file
+     * @param allowResume if <code>true</code> - continue download of the partially loaded file
+     * @throws IOException
+     */
+    public static void download(String urlFrom, String filePath, String checkSum, boolean allowResume) throws IOException {
+        download(urlFrom, filePath, checkSum, allowResume, HashAlgorithm.MD5);
+    }
+
+    /**
+     * Download file from server, save it on the disk and check his hash, calculated with the given algorithm.
+     *
+     * @param urlFrom       url to download from
+     * @param filePath      where to save file
+     * @param checkSum      checksum of the file
+     * @param allowResume   if <code>true</code> - continue download of the partially loaded file
+     * @param hashAlgorithm algorithm, with which checksum is calculated
+     * @throws IOException
+     * @see #download(String, String, String, boolean)
+     */
+    public static void download(String urlFrom, String filePath, String checkSum, boolean allowResume,
+                                HashAlgorithm hashAlgorithm) throws IOException {
         Log.d("CHCP", "Loading file: " + urlFrom);
 
         File downloadFile = new File(filePath);
-        FilesUtility.delete(downloadFile);
+        if (!allowResume) {
+            FilesUtility.delete(downloadFile);
+        }
         FilesUtility.ensureDirectoryExists(downloadFile.getParentFile());
 
-        MD5 md5 = new MD5();
-
         URL downloadUrl = URLUtility.stringToUrl(urlFrom);
         if (downloadUrl == null) {
             throw new IOException("Invalid url format");
         }
 
-        URLConnection connection = downloadUrl.openConnection();
-        connection.connect();
+        final long resumeOffset = downloadFile.exists() ? downloadFile.length() : 0;
+        Hasher hasher = hashAlgorithm.newHasher();
+        try {
+            final ConnectionPool connectionPool = ConnectionPool.getInstance();
+            final HttpURLConnection connection = connectionPool.openConnection(downloadUrl);
+            if (resumeOffset > 0) {
+                // byte range must address the file itself, not it's compressed representation
+                ContentDecoder.requestIdentity(connection);
+                connection.setRequestProperty("Range", "bytes=" + resumeOffset + "-");
+            } else {
+                ContentDecoder.requestCompression(connection);
+            }
+
+            CountingInputStream rawInput = null;
+            InputStream input = null;
+            OutputStream output = null;
+            boolean isFullyRead = false;
+            boolean isRestartRequired = false;
+            long decodedBytesCount = 0;
+            try {
+                final int responseCode = connection.getResponseCode();
+                final boolean isResumed = resumeOffset > 0 && responseCode == HttpURLConnection.HTTP_PARTIAL;
+                if (resumeOffset > 0 && responseCode == HTTP_RANGE_NOT_SATISFIABLE) {
+                    // local part doesn't match the file on the server - load it from scratch
+                    isRestartRequired = true;
+                } else if (responseCode != HttpURLConnection.HTTP_OK && !isResumed) {
+                    throw new IOException("Failed to load file " + urlFrom + ": server responded with code " + responseCode);
+                } else {
+                    if (isResumed) {
+                        Log.d("CHCP", "Resuming download of " + urlFrom + " from byte " + resumeOffset);
+                        hashFileContent(downloadFile, hasher);
+                    }
+
+                    // data is decompressed on the fly: same bytes are written to the disk and fed to the hasher
+                    rawInput = new CountingInputStream(connection.getInputStream());
+                    input = new BufferedInputStream(ContentDecoder.decode(connection, rawInput));
+                    output = new BufferedOutputStream(new FileOutputStream(filePath, isResumed));
+
+                    byte data[] = new byte[1024];
+                    int count;
+                    while ((count = input.read(data)) != -1) {
+                        // download is cancelled
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedIOException("Download of the file " + urlFrom + " has been cancelled");
+                        }
 
-        InputStream input = new BufferedInputStream(downloadUrl.openStream());
-        OutputStream output = new BufferedOutputStream(new FileOutputStream(filePath, false));
+                        output.write(data, 0, count);
+                        hasher.write(data, count);
+                        decodedBytesCount += count;
+                    }
+                    isFullyRead = true;
 
-        byte data[] = new byte[1024];
-        int count;
-        while ((count = input.read(data)) != -1) {
-            output.write(data, 0, count);
-            md5.write(data, count);
+                    output.flush();
+                }
+            } finally {
+                if (output != null) {
+                    output.close();
+                }
+
+                if (isFullyRead) {
+                    connectionPool.releaseConnection(connection, input);
+                } else {
+                    connectionPool.discardConnection(connection);
+                }
+            }
+
+            if (isRestartRequired) {
+                hasher.release();
+                FilesUtility.delete(downloadFile);
+                download(urlFrom, filePath, checkSum, false, hashAlgorithm);
+                return;
+            }
+
+            byte[] downloadedFileDigest = hasher.calculateDigest();
+            if (!Hex.matches(downloadedFileDigest, checkSum)) {
+                FilesUtility.delete(downloadFile);
+                throw new IOException("File is corrupted: checksum " + checkSum + " doesn't match hash " + Hex.encode(downloadedFileDigest) + " of the downloaded file");
+            }
+
+            final long transferredBytesCount = rawInput != null ? rawInput.getCount() : 0;
+            Log.d("CHCP", "Loaded file " + urlFrom + ": " + decodedBytesCount + " bytes, " + transferredBytesCount + " bytes transferred");
+        } finally {
+            // digest goes back to the pool, even if download has failed
+            hasher.release();
         }
+    }
 
-        output.flush();
-        output.close();
-        input.close();
+    /**
+     * Download delta patch from server and apply it to the old version of the file.
+     * Patch is applied while it is being loaded, result is saved on the disk and it's hash is checked.
+     * If result is corrupted - it is removed from the disk.
+     *
+     * @param patchUrl   url of the patch
+     * @param sourcePath old version of the file
+     * @param filePath   where to save new version of the file
+     * @param checkSum   checksum of the new version of the file
+     * @throws IOException if patch is not found, or the result doesn't match the checksum
+     * @see DeltaPatch
+     */
+    public static void downloadPatched(String patchUrl, String sourcePath, String filePath, String checkSum) throws IOException {
+        downloadPatched(patchUrl, sourcePath, filePath, checkSum, HashAlgorithm.MD5);
+    }
+
+    /**
+     * Download delta patch from server and apply it to the old version of the file.
+     * Hash of the result is calculated with the given algorithm.
+     *
+     * @param patchUrl      url of the patch
+     * @param sourcePath    old version of the file
+     * @param filePath      where to save new version of the file
+     * @param checkSum      checksum of the new version of the file
+     * @param hashAlgorithm algorithm, with which checksum is calculated
+     * @throws IOException if patch is not found, or the result doesn't match the checksum
+     * @see #downloadPatched(String, String, String, String)
+     */
+    public static void downloadPatched(String patchUrl, String sourcePath, String filePath, String checkSum,
+                                       HashAlgorithm hashAlgorithm) throws IOException {
+        Log.d("CHCP", "Loading patch: " + patchUrl);
+
+        File downloadFile = new File(filePath);
+        FilesUtility.delete(downloadFile);
+        FilesUtility.ensureDirectoryExists(downloadFile.getParentFile());
+
+        URL downloadUrl = URLUtility.stringToUrl(patchUrl);
+        if (downloadUrl == null) {
+            throw new IOException("Invalid url format");
+        }
+
+        Hasher hasher = hashAlgorithm.newHasher();
+        try {
+            final ConnectionPool connectionPool = ConnectionPool.getInstance();
+            final HttpURLConnection connection = connectionPool.openConnection(downloadUrl);
+            ContentDecoder.requestCompression(connection);
+
+            CountingInputStream rawInput = null;
+            InputStream input = null;
+            OutputStream output = null;
+            RandomAccessFile source = null;
+            boolean isFullyRead = false;
+            long decodedBytesCount;
+            try {
+                final int responseCode = connection.getResponseCode();
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Failed to load patch " + patchUrl + ": server responded with code " + responseCode);
+                }
+
+                source = new RandomAccessFile(sourcePath, "r");
+                rawInput = new CountingInputStream(connection.getInputStream());
+                input = new BufferedInputStream(ContentDecoder.decode(connection, rawInput));
+                output = new BufferedOutputStream(new FileOutputStream(filePath));
+
+                decodedBytesCount = DeltaPatch.apply(source, input, output, hasher);
+                isFullyRead = true;
+
+                output.flush();
+            } finally {
+                if (source != null) {
+                    source.close();
+                }
+
+                if (output != null) {
+                    output.close();
+                }
+
+                if (isFullyRead) {
+                    connectionPool.releaseConnection(connection, input);
+                } else {
+                    connectionPool.discardConnection(connection);
+                    FilesUtility.delete(downloadFile);
+                }
+            }
+
+            byte[] patchedFileDigest = hasher.calculateDigest();
+            if (!Hex.matches(patchedFileDigest, checkSum)) {
+                FilesUtility.delete(downloadFile);
+                throw new IOException("Patched file is corrupted: checksum " + checkSum + " doesn't match hash " + Hex.encode(patchedFileDigest));
+            }
+
+            Log.d("CHCP", "Patched file " + filePath + ": " + decodedBytesCount + " bytes, " + rawInput.getCount() + " bytes transferred");
+        } finally {
+            // digest goes back to the pool, even if download has failed
+            hasher.release();
+        }
+    }
 
-        String downloadedFileHash = md5.calculateHash();
-        if (!downloadedFileHash.equals(checkSum)) {
-            throw new IOException("File is corrupted: checksum " + checkSum + " doesn't match hash " + downloadedFileHash + " of the downloaded file");
+    private static void hashFileContent(File file, Hasher hasher) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            byte[] buff = new byte[8192];
+            int len;
+            while ((len = in.read(buff)) > 0) {
+                hasher.write(buff, len);
+            }
+        } finally {
+            in.close();
         }
     }
 }
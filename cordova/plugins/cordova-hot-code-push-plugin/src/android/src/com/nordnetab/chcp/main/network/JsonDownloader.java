@@ -1,11 +1,15 @@
 package com.nordnetab.chcp.main.network;
 
+import android.util.Log;
+
 import com.nordnetab.chcp.main.utils.URLUtility;
 
 import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
-import java.net.URLConnection;
 
 /**
  * Created by Nikolay Demyankov on 22.07.15.
@@ -18,6 +22,7 @@ import java.net.URLConnection;
 abstract class JsonDownloader<T> {
 
     private String downloadUrl;
+    private ResponseValidators validators;
 
     /**
      * Create instance of the object from json string.
@@ -27,13 +32,49 @@ abstract class JsonDownloader<T> {
      */
     protected abstract T createInstance(String json);
 
+    /**
+     * Create instance of the object from the response stream.
+     * By default response is read into the string and passed to {@link #createInstance(String)}.
+     * Override it, if object can be parsed directly from the stream.
+     *
+     * @param input stream with JSON data
+     * @return instance of the object, created from the JSON data
+     * @throws IOException if failed to read the stream
+     */
+    protected T createInstance(InputStream input) throws IOException {
+        StringBuilder jsonContent = new StringBuilder();
+        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(input));
+
+        char data[] = new char[1024];
+        int count;
+        while ((count = bufferedReader.read(data)) != -1) {
+            jsonContent.append(data, 0, count);
+        }
+
+        return createInstance(jsonContent.toString());
+    }
+
     /**
      * Class constructor
      *
      * @param url url from which JSON should be loaded
      */
     public JsonDownloader(String url) {
+        this(url, null);
+    }
+
+    /**
+     * Class constructor.
+     * If validators are provided - request is made conditional: if JSON on the server hasn't changed
+     * since the last download - it is not loaded and not parsed again.
+     *
+     * @param url        url from which JSON should be loaded
+     * @param validators validators of the previous response; updated with the new response values
+     * @see ResponseValidators
+     */
+    public JsonDownloader(String url, ResponseValidators validators) {
         this.downloadUrl = url;
+        this.validators = validators;
     }
 
     /**
@@ -46,10 +87,7 @@ abstract class JsonDownloader<T> {
         DownloadResult<T> result;
 
         try {
-            String json = downloadJson();
-            T value = createInstance(json);
-
-            result = new DownloadResult<T>(value);
+            result = downloadAndParse();
         } catch (Exception e) {
             e.printStackTrace();
 
@@ -59,24 +97,66 @@ abstract class JsonDownloader<T> {
         return result;
     }
 
-    private String downloadJson() throws Exception {
-        StringBuilder jsonContent = new StringBuilder();
-
+    private DownloadResult<T> downloadAndParse() throws Exception {
         URL url = URLUtility.stringToUrl(downloadUrl);
         if (url == null) {
             throw new Exception("Invalid url format:" + downloadUrl);
         }
 
-        URLConnection urlConnection = url.openConnection();
-        BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(urlConnection.getInputStream()));
+        final ConnectionPool connectionPool = ConnectionPool.getInstance();
+        final HttpURLConnection connection = connectionPool.openConnection(url);
+        InputStream input = null;
+        boolean isFullyRead = false;
+        try {
+            addValidatorsToRequest(connection);
+            ContentDecoder.requestCompression(connection);
+
+            // content on the server is the same, as we already have
+            if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                Log.d("CHCP", "Not modified since the last download: " + downloadUrl);
+                isFullyRead = true;
+
+                return DownloadResult.notModified();
+            }
+
+            // object is created while data is being loaded
+            input = ContentDecoder.decode(connection, connection.getInputStream());
+            T value = createInstance(input);
+            isFullyRead = true;
+
+            storeValidatorsFromResponse(connection);
+
+            return new DownloadResult<T>(value);
+        } finally {
+            if (isFullyRead) {
+                connectionPool.releaseConnection(connection, input);
+            } else {
+                connectionPool.discardConnection(connection);
+            }
+        }
+    }
 
-        char data[] = new char[1024];
-        int count;
-        while ((count = bufferedReader.read(data)) != -1) {
-            jsonContent.append(data, 0, count);
+    private void addValidatorsToRequest(final HttpURLConnection connection) {
+        if (validators == null) {
+            return;
+        }
+
+        final String eTag = validators.getETag(downloadUrl);
+        if (eTag != null) {
+            connection.setRequestProperty("If-None-Match", eTag);
+        }
+
+        final String lastModified = validators.getLastModified(downloadUrl);
+        if (lastModified != null) {
+            connection.setRequestProperty("If-Modified-Since", lastModified);
+        }
+    }
+
+    private void storeValidatorsFromResponse(final HttpURLConnection connection) {
+        if (validators == null) {
+            return;
         }
-        bufferedReader.close();
 
-        return jsonContent.toString();
+        validators.set(downloadUrl, connection.getHeaderField("ETag"), connection.getHeaderField("Last-Modified"));
     }
 }
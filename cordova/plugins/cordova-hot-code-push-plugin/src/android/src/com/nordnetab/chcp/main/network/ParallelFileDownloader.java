@@ -0,0 +1,299 @@
+package com.nordnetab.chcp.main.network;
+
+import android.util.Log;
+
+import com.nordnetab.chcp.main.model.LayeredRelease;
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
+import com.nordnetab.chcp.main.utils.Paths;
+import com.nordnetab.chcp.main.utils.URLUtility;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Download engine, that loads list of files concurrently.
+ * Number of simultaneous downloads is limited globally and for each host separately.
+ * Each file is fetched, hashed and written to the disk by the worker thread.
+ * Download stops on the first error: all outstanding work is cancelled and the error is rethrown.
+ *
+ * @see FileDownloader
+ */
+public class ParallelFileDownloader {
+
+    /**
+     * Default number of files, that are downloaded at the same time.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 6;
+
+    /**
+     * Default number of files, that are downloaded at the same time from the single host.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS_PER_HOST = 4;
+
+    private final int maxConcurrentDownloads;
+    private final int maxConcurrentDownloadsPerHost;
+    private final Map<String, Semaphore> hostsPermits;
+
+    private HashAlgorithm hashAlgorithm;
+    private String patchesUrl;
+    private LayeredRelease patchSourceRelease;
+    private Map<String, String> patchSourceHashes;
+
+    /**
+     * Class constructor.
+     * Uses default concurrency limits.
+     */
+    public ParallelFileDownloader() {
+        this(DEFAULT_MAX_CONCURRENT_DOWNLOADS, DEFAULT_MAX_CONCURRENT_DOWNLOADS_PER_HOST);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param maxConcurrentDownloads        how many files can be loaded at the same time
+     * @param maxConcurrentDownloadsPerHost how many files can be loaded at the same time from the single host
+     */
+    public ParallelFileDownloader(int maxConcurrentDownloads, int maxConcurrentDownloadsPerHost) {
+        this.maxConcurrentDownloads = Math.max(1, maxConcurrentDownloads);
+        this.maxConcurrentDownloadsPerHost = Math.max(1, Math.min(maxConcurrentDownloadsPerHost, this.maxConcurrentDownloads));
+        this.hostsPermits = new HashMap<String, Semaphore>();
+        this.hashAlgorithm = HashAlgorithm.MD5;
+    }
+
+    /**
+     * Setter for the algorithm, with which hashes of the files are calculated.
+     * By default - MD5 is used.
+     *
+     * @param hashAlgorithm hash algorithm
+     */
+    public void setHashAlgorithm(final HashAlgorithm hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    /**
+     * Enable delta patches for the files, that already exist on the device.
+     * Before loading the whole file we try to load patch <code>patchesUrl/oldHash_newHash.patch</code>
+     * and apply it to the old version of the file. If there is no patch, or the result is corrupted -
+     * file is loaded as a whole.
+     *
+     * @param patchesUrl   root url on the server, where patches are located
+     * @param sourceRelease release with old versions of the files
+     * @param sourceHashes  hashes of the old versions of the files, mapped by the file name
+     * @see com.nordnetab.chcp.main.patch.DeltaPatch
+     */
+    public void enableDeltaPatches(final String patchesUrl, final LayeredRelease sourceRelease, final Map<String, String> sourceHashes) {
+        this.patchesUrl = patchesUrl;
+        this.patchSourceRelease = sourceRelease;
+        this.patchSourceHashes = sourceHashes;
+    }
+
+    /**
+     * Download list of files.
+     * Full url to the file is constructed from the contentFolderUrl and ManifestFile#name (relative path).
+     * Hash of each downloaded file is checked against ManifestFile#hash.
+     * If path is listed several times - only it's first entry is loaded.
+     * On the first failure all other downloads are cancelled and exception is thrown.
+     *
+     * @param downloadFolder   absolute path to the folder, where downloaded files should be placed
+     * @param contentFolderUrl root url on the server, where all files are located
+     * @param files            list of files to download
+     * @throws IOException if any of the files failed to download
+     * @see ManifestFile
+     */
+    public void downloadFiles(final String downloadFolder, final String contentFolderUrl, final List<ManifestFile> files) throws IOException {
+        downloadFiles(downloadFolder, contentFolderUrl, files, null);
+    }
+
+    /**
+     * Download list of files with the support of the download resume.
+     * Files, that are marked in the journal as loaded, are skipped.
+     * Partially loaded files are continued from the last byte on the disk.
+     *
+     * @param downloadFolder   absolute path to the folder, where downloaded files should be placed
+     * @param contentFolderUrl root url on the server, where all files are located
+     * @param files            list of files to download
+     * @param journal          journal of the download; can be <code>null</code>
+     * @throws IOException if any of the files failed to download
+     * @see DownloadJournal
+     */
+    public void downloadFiles(final String downloadFolder, final String contentFolderUrl, final List<ManifestFile> files,
+                              final DownloadJournal journal) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final int poolSize = Math.min(maxConcurrentDownloads, files.size());
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        final CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+        final AtomicBoolean isCancelled = new AtomicBoolean(false);
+        final List<Future<Void>> tasks = new ArrayList<Future<Void>>(files.size());
+
+        try {
+            final Set<String> submittedFiles = new HashSet<String>(files.size() * 2);
+            for (ManifestFile file : files) {
+                // repeated path is loaded once, so two workers never write into the same file
+                if (!submittedFiles.add(file.name)) {
+                    continue;
+                }
+
+                final String fileUrl = URLUtility.construct(contentFolderUrl, file.name);
+                final String filePath = Paths.get(downloadFolder, file.name);
+                tasks.add(completionService.submit(new DownloadTask(file, fileUrl, filePath, journal, isCancelled)));
+            }
+
+            for (int i = 0, count = tasks.size(); i < count; i++) {
+                completionService.take().get();
+            }
+        } catch (ExecutionException e) {
+            throw toIOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Download has been interrupted");
+        } finally {
+            isCancelled.set(true);
+            for (Future<Void> task : tasks) {
+                task.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+
+        Log.d("CHCP", "Loaded " + files.size() + " files in " + (System.currentTimeMillis() - startTime) + " ms");
+    }
+
+    private static IOException toIOException(Throwable error) {
+        if (error instanceof IOException) {
+            return (IOException) error;
+        }
+
+        final IOException ioException = new IOException("Failed to download file");
+        ioException.initCause(error);
+
+        return ioException;
+    }
+
+    private Semaphore permitsForHost(final String fileUrl) {
+        final URL url = URLUtility.stringToUrl(fileUrl);
+        final String host = url != null ? url.getHost() : "";
+
+        synchronized (hostsPermits) {
+            Semaphore permits = hostsPermits.get(host);
+            if (permits == null) {
+                permits = new Semaphore(maxConcurrentDownloadsPerHost);
+                hostsPermits.put(host, permits);
+            }
+
+            return permits;
+        }
+    }
+
+    /**
+     * Task to download single file.
+     * Waits for the free slot of the host before starting the download.
+     */
+    private class DownloadTask implements Callable<Void> {
+
+        private final ManifestFile file;
+        private final String fileUrl;
+        private final String filePath;
+        private final DownloadJournal journal;
+        private final AtomicBoolean isCancelled;
+
+        DownloadTask(ManifestFile file, String fileUrl, String filePath, DownloadJournal journal, AtomicBoolean isCancelled) {
+            this.file = file;
+            this.fileUrl = fileUrl;
+            this.filePath = filePath;
+            this.journal = journal;
+            this.isCancelled = isCancelled;
+        }
+
+        @Override
+        public Void call() throws Exception {
+            if (isCancelled.get()) {
+                return null;
+            }
+
+            // file is already loaded during one of the previous attempts
+            if (journal != null && journal.isCompleted(file)) {
+                return null;
+            }
+
+            final Semaphore hostPermits = permitsForHost(fileUrl);
+            hostPermits.acquire();
+            try {
+                if (!isCancelled.get()) {
+                    download();
+                }
+            } catch (Exception e) {
+                isCancelled.set(true);
+                throw e;
+            } finally {
+                hostPermits.release();
+            }
+
+            return null;
+        }
+
+        private void download() throws IOException {
+            final boolean isResumable = journal != null && journal.isStarted(file);
+            if (journal != null && !isResumable) {
+                journal.markStarted(file);
+            }
+
+            if (isResumable || !downloadPatch()) {
+                FileDownloader.download(fileUrl, filePath, file.hash, isResumable, hashAlgorithm);
+            }
+
+            if (journal != null) {
+                journal.markCompleted(file);
+            }
+        }
+
+        /**
+         * Try to build the file from it's old version and the delta patch.
+         *
+         * @return <code>true</code> if file is patched; <code>false</code> - if it should be loaded as a whole
+         * @throws InterruptedIOException if download was cancelled
+         */
+        private boolean downloadPatch() throws InterruptedIOException {
+            if (patchesUrl == null || patchSourceHashes == null) {
+                return false;
+            }
+
+            final String sourceHash = patchSourceHashes.get(file.name);
+            final File sourceFile = patchSourceRelease.resolve(file.name);
+            if (sourceHash == null || sourceFile == null) {
+                return false;
+            }
+
+            final String patchUrl = URLUtility.construct(patchesUrl, sourceHash + "_" + file.hash + ".patch");
+            try {
+                FileDownloader.downloadPatched(patchUrl, sourceFile.getAbsolutePath(), filePath, file.hash, hashAlgorithm);
+                return true;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                Log.d("CHCP", "Can't use patch " + patchUrl + ", loading the whole file: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+}
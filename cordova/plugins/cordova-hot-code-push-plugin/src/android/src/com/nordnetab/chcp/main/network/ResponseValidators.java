@@ -0,0 +1,135 @@
+package com.nordnetab.chcp.main.network;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Model for HTTP cache validators (ETag and Last-Modified) of the loaded JSON files.
+ * Validators are stored per url next to the stored configs. They are send with the next request
+ * to the same url, so server could respond with <code>304 Not Modified</code> instead of the whole file.
+ *
+ * @see JsonDownloader
+ */
+public class ResponseValidators {
+
+    // keys to parse json
+    private static class JsonKeys {
+        public static final String ETAG = "etag";
+        public static final String LAST_MODIFIED = "last_modified";
+    }
+
+    private final Map<String, String> eTags;
+    private final Map<String, String> lastModifiedDates;
+
+    /**
+     * Create instance of the object from JSON string.
+     *
+     * @param json JSON string
+     * @return validators instance
+     */
+    public static ResponseValidators fromJson(final String json) {
+        final ResponseValidators validators = new ResponseValidators();
+        try {
+            final JsonNode validatorsNode = new ObjectMapper().readTree(json);
+            final Iterator<Map.Entry<String, JsonNode>> urlsIterator = validatorsNode.fields();
+            while (urlsIterator.hasNext()) {
+                final Map.Entry<String, JsonNode> urlEntry = urlsIterator.next();
+                final JsonNode urlNode = urlEntry.getValue();
+                validators.set(urlEntry.getKey(),
+                        urlNode.has(JsonKeys.ETAG) ? urlNode.get(JsonKeys.ETAG).asText() : null,
+                        urlNode.has(JsonKeys.LAST_MODIFIED) ? urlNode.get(JsonKeys.LAST_MODIFIED).asText() : null);
+            }
+        } catch (Exception e) {
+            Log.d("CHCP", "Failed to read stored response validators", e);
+        }
+
+        return validators;
+    }
+
+    /**
+     * Class constructor.
+     * Creates empty set of validators.
+     */
+    public ResponseValidators() {
+        eTags = new HashMap<String, String>();
+        lastModifiedDates = new HashMap<String, String>();
+    }
+
+    /**
+     * Getter for the ETag of the last response from the url.
+     *
+     * @param url requested url
+     * @return ETag value; <code>null</code> - if not set
+     */
+    public synchronized String getETag(final String url) {
+        return eTags.get(url);
+    }
+
+    /**
+     * Getter for the Last-Modified date of the last response from the url.
+     *
+     * @param url requested url
+     * @return Last-Modified value; <code>null</code> - if not set
+     */
+    public synchronized String getLastModified(final String url) {
+        return lastModifiedDates.get(url);
+    }
+
+    /**
+     * Save validators of the response from the url.
+     * If both of them are empty - validators for the url are removed.
+     *
+     * @param url          requested url
+     * @param eTag         value of the ETag header
+     * @param lastModified value of the Last-Modified header
+     */
+    public synchronized void set(final String url, final String eTag, final String lastModified) {
+        if (TextUtils.isEmpty(eTag)) {
+            eTags.remove(url);
+        } else {
+            eTags.put(url, eTag);
+        }
+
+        if (TextUtils.isEmpty(lastModified)) {
+            lastModifiedDates.remove(url);
+        } else {
+            lastModifiedDates.put(url, lastModified);
+        }
+    }
+
+    /**
+     * Convert object into JSON string.
+     *
+     * @return JSON string
+     */
+    @Override
+    public synchronized String toString() {
+        final JsonNodeFactory nodeFactory = JsonNodeFactory.instance;
+        final ObjectNode validatorsNode = nodeFactory.objectNode();
+        for (Map.Entry<String, String> entry : eTags.entrySet()) {
+            urlNode(validatorsNode, entry.getKey()).set(JsonKeys.ETAG, nodeFactory.textNode(entry.getValue()));
+        }
+        for (Map.Entry<String, String> entry : lastModifiedDates.entrySet()) {
+            urlNode(validatorsNode, entry.getKey()).set(JsonKeys.LAST_MODIFIED, nodeFactory.textNode(entry.getValue()));
+        }
+
+        return validatorsNode.toString();
+    }
+
+    private static ObjectNode urlNode(final ObjectNode validatorsNode, final String url) {
+        if (validatorsNode.has(url)) {
+            return (ObjectNode) validatorsNode.get(url);
+        }
+
+        return validatorsNode.putObject(url);
+    }
+}
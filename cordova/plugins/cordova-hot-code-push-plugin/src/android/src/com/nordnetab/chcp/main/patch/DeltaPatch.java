@@ -0,0 +1,136 @@
+package com.nordnetab.chcp.main.patch;
+
+import com.nordnetab.chcp.main.utils.Hasher;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Binary delta patch, that transforms old version of the file into the new one.
+ * <p/>
+ * Patch is a sequence of instructions: copy range of bytes from the old file, or add bytes, that are stored
+ * in the patch itself. All numbers are big-endian. Format:
+ * <pre>
+ * header:  magic "CHCPDLT1" (8 bytes), length of the new file (int64)
+ * COPY:    0x01, offset in the old file (int64), length (int32)
+ * ADD:     0x02, length (int32), data
+ * END:     0x00
+ * </pre>
+ * Patch is applied in a streaming fashion: it can be read directly from the network,
+ * and the result is hashed while it is being written.
+ *
+ * @see DeltaPatchGenerator
+ */
+public class DeltaPatch {
+
+    static final byte[] MAGIC = {'C', 'H', 'C', 'P', 'D', 'L', 'T', '1'};
+
+    static final int OP_END = 0;
+    static final int OP_COPY = 1;
+    static final int OP_ADD = 2;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private DeltaPatch() {
+    }
+
+    /**
+     * Apply patch to the old version of the file.
+     *
+     * @param source old version of the file
+     * @param patch  patch data
+     * @param output where to write new version of the file
+     * @param hasher hasher, to which new version of the file is written; can be <code>null</code>
+     * @return length of the new file
+     * @throws IOException if patch is malformed or doesn't match the old file
+     */
+    public static long apply(final RandomAccessFile source, final InputStream patch, final OutputStream output, final Hasher hasher) throws IOException {
+        final DataInputStream input = new DataInputStream(patch);
+        readHeader(input);
+
+        final long expectedLength = input.readLong();
+        final long sourceLength = source.length();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long writtenLength = 0;
+
+        int operation;
+        while ((operation = input.read()) != OP_END) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Patch application has been cancelled");
+            }
+
+            switch (operation) {
+                case OP_COPY: {
+                    final long offset = input.readLong();
+                    final int length = input.readInt();
+                    if (offset < 0 || length < 0 || offset + length > sourceLength) {
+                        throw new IOException("Patch refers to the data outside of the source file");
+                    }
+
+                    source.seek(offset);
+                    int remaining = length;
+                    while (remaining > 0) {
+                        final int count = Math.min(remaining, buffer.length);
+                        source.readFully(buffer, 0, count);
+                        write(output, hasher, buffer, count);
+                        remaining -= count;
+                    }
+                    writtenLength += length;
+                    break;
+                }
+                case OP_ADD: {
+                    final int length = input.readInt();
+                    if (length < 0) {
+                        throw new IOException("Malformed patch: negative data length");
+                    }
+
+                    int remaining = length;
+                    while (remaining > 0) {
+                        final int count = Math.min(remaining, buffer.length);
+                        input.readFully(buffer, 0, count);
+                        write(output, hasher, buffer, count);
+                        remaining -= count;
+                    }
+                    writtenLength += length;
+                    break;
+                }
+                case -1:
+                    throw new EOFException("Patch is truncated");
+                default:
+                    throw new IOException("Malformed patch: unknown operation " + operation);
+            }
+
+            if (writtenLength > expectedLength) {
+                throw new IOException("Patch produces more data than expected");
+            }
+        }
+
+        if (writtenLength != expectedLength) {
+            throw new IOException("Patch produced " + writtenLength + " bytes instead of " + expectedLength);
+        }
+
+        return writtenLength;
+    }
+
+    private static void readHeader(final DataInputStream input) throws IOException {
+        final byte[] magic = new byte[MAGIC.length];
+        input.readFully(magic);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                throw new IOException("Data is not a delta patch");
+            }
+        }
+    }
+
+    private static void write(final OutputStream output, final Hasher hasher, final byte[] data, final int length) throws IOException {
+        output.write(data, 0, length);
+        if (hasher != null) {
+            hasher.write(data, length);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.nordnetab.chcp.main.patch;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generator of the delta patches.
+ * Not used by the plugin at runtime: it is a tool to prepare patches on the server side, and to test them offline.
+ * <p/>
+ * Old file is split into blocks, each of which is indexed by the rolling checksum. Then we slide the window
+ * over the new file, and for each matched block emit COPY instruction, extending the match as far as possible.
+ * Everything in between is emitted as ADD instruction.
+ * <p/>
+ * Usage: <code>java com.nordnetab.chcp.main.patch.DeltaPatchGenerator old_file new_file patch_file</code>
+ * <p/>
+ * Patch for the file should be published as <code>patches_url/oldHash_newHash.patch</code>.
+ *
+ * @see DeltaPatch
+ */
+public class DeltaPatchGenerator {
+
+    /**
+     * Default size of the block, by which data is matched.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+
+    private final int blockSize;
+
+    private DataOutputStream output;
+    private long pendingCopyOffset;
+    private int pendingCopyLength;
+
+    /**
+     * Class constructor.
+     * Uses default block size.
+     */
+    public DeltaPatchGenerator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Class constructor.
+     *
+     * @param blockSize size of the block, by which data is matched; smaller blocks give smaller patches,
+     *                  but take more time and memory to generate
+     */
+    public DeltaPatchGenerator(int blockSize) {
+        this.blockSize = Math.max(4, blockSize);
+    }
+
+    /**
+     * Generate patch, that transforms source data into the target data.
+     *
+     * @param source old version of the data
+     * @param target new version of the data
+     * @param out    where to write the patch
+     * @throws IOException if failed to write the patch
+     */
+    public synchronized void generate(final byte[] source, final byte[] target, final OutputStream out) throws IOException {
+        output = new DataOutputStream(out);
+        pendingCopyLength = 0;
+
+        output.write(DeltaPatch.MAGIC);
+        output.writeLong(target.length);
+
+        final Map<Integer, List<Integer>> blocksIndex = indexBlocks(source);
+
+        int literalStart = 0;
+        int position = 0;
+        int a = 0;
+        int b = 0;
+        boolean isHashValid = false;
+
+        while (position + blockSize <= target.length) {
+            if (!isHashValid) {
+                a = 0;
+                b = 0;
+                for (int i = 0; i < blockSize; i++) {
+                    final int value = target[position + i] & 0xFF;
+                    a += value;
+                    b += (blockSize - i) * value;
+                }
+                isHashValid = true;
+            }
+
+            final List<Integer> candidates = blocksIndex.get(checksumKey(a, b));
+            int matchOffset = -1;
+            int matchLength = 0;
+            if (candidates != null) {
+                for (int candidate : candidates) {
+                    final int length = matchLength(source, candidate, target, position);
+                    if (length >= blockSize && length > matchLength) {
+                        matchOffset = candidate;
+                        matchLength = length;
+                    }
+                }
+            }
+
+            if (matchOffset < 0) {
+                // roll the window by one byte
+                final int outValue = target[position] & 0xFF;
+                position++;
+                if (position + blockSize <= target.length) {
+                    final int inValue = target[position + blockSize - 1] & 0xFF;
+                    a = a - outValue + inValue;
+                    b = b - blockSize * outValue + a;
+                }
+                continue;
+            }
+
+            // extend match backwards into the pending literal data
+            while (position > literalStart && matchOffset > 0 && source[matchOffset - 1] == target[position - 1]) {
+                position--;
+                matchOffset--;
+                matchLength++;
+            }
+
+            emitAdd(target, literalStart, position - literalStart);
+            emitCopy(matchOffset, matchLength);
+
+            position += matchLength;
+            literalStart = position;
+            isHashValid = false;
+        }
+
+        emitAdd(target, literalStart, target.length - literalStart);
+        flushCopy();
+        output.write(DeltaPatch.OP_END);
+        output.flush();
+    }
+
+    /**
+     * Generate patch for the files.
+     *
+     * @param args paths to the old file, the new file and the resulting patch
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            System.out.println("Usage: DeltaPatchGenerator old_file new_file patch_file");
+            System.exit(1);
+        }
+
+        try {
+            final byte[] source = readFile(new File(args[0]));
+            final byte[] target = readFile(new File(args[1]));
+
+            final OutputStream out = new BufferedOutputStream(new FileOutputStream(args[2]));
+            try {
+                new DeltaPatchGenerator().generate(source, target, out);
+            } finally {
+                out.close();
+            }
+
+            System.out.println("Patch size: " + new File(args[2]).length() + " bytes, new file size: " + target.length + " bytes");
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    // region Private API
+
+    private Map<Integer, List<Integer>> indexBlocks(final byte[] source) {
+        final Map<Integer, List<Integer>> index = new HashMap<Integer, List<Integer>>();
+        for (int offset = 0; offset + blockSize <= source.length; offset += blockSize) {
+            int a = 0;
+            int b = 0;
+            for (int i = 0; i < blockSize; i++) {
+                final int value = source[offset + i] & 0xFF;
+                a += value;
+                b += (blockSize - i) * value;
+            }
+
+            final Integer key = checksumKey(a, b);
+            List<Integer> offsets = index.get(key);
+            if (offsets == null) {
+                offsets = new ArrayList<Integer>(1);
+                index.put(key, offsets);
+            }
+            offsets.add(offset);
+        }
+
+        return index;
+    }
+
+    private static int checksumKey(final int a, final int b) {
+        return ((b & 0xFFFF) << 16) | (a & 0xFFFF);
+    }
+
+    private static int matchLength(final byte[] source, final int sourceOffset, final byte[] target, final int targetOffset) {
+        final int maxLength = Math.min(source.length - sourceOffset, target.length - targetOffset);
+        int length = 0;
+        while (length < maxLength && source[sourceOffset + length] == target[targetOffset + length]) {
+            length++;
+        }
+
+        return length;
+    }
+
+    private void emitCopy(final long offset, final int length) throws IOException {
+        // merge with the previous copy, if they are adjacent
+        if (pendingCopyLength > 0 && pendingCopyOffset + pendingCopyLength == offset) {
+            pendingCopyLength += length;
+            return;
+        }
+
+        flushCopy();
+        pendingCopyOffset = offset;
+        pendingCopyLength = length;
+    }
+
+    private void flushCopy() throws IOException {
+        if (pendingCopyLength == 0) {
+            return;
+        }
+
+        output.write(DeltaPatch.OP_COPY);
+        output.writeLong(pendingCopyOffset);
+        output.writeInt(pendingCopyLength);
+        pendingCopyLength = 0;
+    }
+
+    private void emitAdd(final byte[] data, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return;
+        }
+
+        flushCopy();
+        output.write(DeltaPatch.OP_ADD);
+        output.writeInt(length);
+        output.write(data, offset, length);
+    }
+
+    private static byte[] readFile(final File file) throws IOException {
+        final InputStream in = new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream((int) file.length());
+            final byte[] buffer = new byte[8192];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    // endregion
+}
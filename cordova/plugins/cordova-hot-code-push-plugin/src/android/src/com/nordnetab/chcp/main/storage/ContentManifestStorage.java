@@ -1,26 +1,79 @@
 package com.nordnetab.chcp.main.storage;
 
+import android.util.Log;
+
+import com.nordnetab.chcp.main.config.BinaryManifest;
 import com.nordnetab.chcp.main.config.ContentManifest;
 import com.nordnetab.chcp.main.model.PluginFilesStructure;
+import com.nordnetab.chcp.main.utils.FilesUtility;
 import com.nordnetab.chcp.main.utils.Paths;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
 /**
  * Created by Nikolay Demyankov on 23.07.15.
  * <p/>
  * Utility class to save and load content manifest file from the certain folder.
+ * Manifest is stored in binary form, which is memory-mapped on load. If folder has only JSON version
+ * of the manifest (for example, it came from the assets) - it is used instead.
+ * Folder never keeps both versions after the save, so the older one can't be picked up by mistake.
  *
+ * @see BinaryManifest
  * @see ContentManifest
  * @see IObjectFileStorage
  */
 public class ContentManifestStorage extends FileStorageAbs<ContentManifest> {
 
     private final String fileName;
+    private final String binaryFileName;
 
     /**
      * Constructor.
      */
     public ContentManifestStorage() {
         fileName = PluginFilesStructure.MANIFEST_FILE_NAME;
+        binaryFileName = PluginFilesStructure.BINARY_MANIFEST_FILE_NAME;
+    }
+
+    @Override
+    public boolean storeInFolder(ContentManifest manifest, String folder) {
+        final File binaryFile = new File(Paths.get(folder, binaryFileName));
+        try {
+            BinaryManifest.write(manifest.getFiles(), binaryFile);
+
+            // outdated JSON version should not be used, when binary one can't be opened
+            FilesUtility.delete(getFullPathForFileInFolder(folder));
+
+            return true;
+        } catch (IOException e) {
+            Log.d("CHCP", "Can't store manifest in binary form, using JSON: " + e.getMessage());
+        }
+
+        // outdated binary version should not shadow JSON
+        FilesUtility.delete(binaryFile);
+
+        return super.storeInFolder(manifest, folder);
+    }
+
+    @Override
+    public ContentManifest loadFromFolder(String folder) {
+        final File binaryFile = new File(Paths.get(folder, binaryFileName));
+        if (binaryFile.exists()) {
+            try {
+                return ContentManifest.fromBinary(BinaryManifest.open(binaryFile));
+            } catch (IOException e) {
+                Log.d("CHCP", "Failed to open binary manifest, using JSON: " + e.getMessage());
+            }
+        }
+
+        return super.loadFromFolder(folder);
     }
 
     @Override
@@ -28,6 +81,26 @@ public class ContentManifestStorage extends FileStorageAbs<ContentManifest> {
         return ContentManifest.fromJson(json);
     }
 
+    @Override
+    protected ContentManifest readFromFile(String filePath) throws IOException {
+        final InputStream input = new BufferedInputStream(new FileInputStream(filePath));
+        try {
+            return ContentManifest.fromJson(input);
+        } finally {
+            input.close();
+        }
+    }
+
+    @Override
+    protected void writeToFile(ContentManifest manifest, String filePath) throws IOException {
+        final OutputStream output = new BufferedOutputStream(new FileOutputStream(filePath));
+        try {
+            manifest.writeJson(output);
+        } finally {
+            output.close();
+        }
+    }
+
     @Override
     protected String getFullPathForFileInFolder(String folder) {
         return Paths.get(folder, fileName);
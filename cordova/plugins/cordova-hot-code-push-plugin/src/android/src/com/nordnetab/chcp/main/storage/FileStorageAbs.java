@@ -32,6 +32,32 @@ abstract class FileStorageAbs<T> implements IObjectFileStorage<T> {
      */
     protected abstract String getFullPathForFileInFolder(String folder);
 
+    /**
+     * Write object into the file.
+     * By default object is stored as it's string representation.
+     * Override it, if object can be written in a more efficient way.
+     *
+     * @param object   object to store
+     * @param filePath absolute path to the file
+     * @throws IOException if failed to write into the file
+     */
+    protected void writeToFile(T object, String filePath) throws IOException {
+        FilesUtility.writeToFile(object.toString(), filePath);
+    }
+
+    /**
+     * Restore object from the file.
+     * By default file is read as a string and passed to {@link #createInstance(String)}.
+     * Override it, if object can be restored in a more efficient way.
+     *
+     * @param filePath absolute path to the file
+     * @return restored object
+     * @throws IOException if failed to read the file
+     */
+    protected T readFromFile(String filePath) throws IOException {
+        return createInstance(FilesUtility.readFromFile(filePath));
+    }
+
     @Override
     public boolean storeInFolder(T object, String folder) {
         final String pathToStorableFile = getFullPathForFileInFolder(folder);
@@ -39,8 +65,11 @@ abstract class FileStorageAbs<T> implements IObjectFileStorage<T> {
             return false;
         }
 
+        // file might be hard linked with the other release: replace it instead of changing the shared data
+        FilesUtility.delete(pathToStorableFile);
+
         try {
-            FilesUtility.writeToFile(object.toString(), pathToStorableFile);
+            writeToFile(object, pathToStorableFile);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
@@ -58,8 +87,7 @@ abstract class FileStorageAbs<T> implements IObjectFileStorage<T> {
 
         T result = null;
         try {
-            String json = FilesUtility.readFromFile(pathToStorableFile);
-            result = createInstance(json);
+            result = readFromFile(pathToStorableFile);
         } catch (IOException e) {
             //e.printStackTrace();
         }
@@ -0,0 +1,33 @@
+package com.nordnetab.chcp.main.storage;
+
+import com.nordnetab.chcp.main.model.InstallPlan;
+import com.nordnetab.chcp.main.model.PluginFilesStructure;
+import com.nordnetab.chcp.main.utils.Paths;
+
+/**
+ * Utility class to save and load installation plan of the update from the download folder.
+ *
+ * @see InstallPlan
+ * @see IObjectFileStorage
+ */
+public class InstallPlanStorage extends FileStorageAbs<InstallPlan> {
+
+    private final String fileName;
+
+    /**
+     * Class constructor
+     */
+    public InstallPlanStorage() {
+        fileName = PluginFilesStructure.INSTALL_PLAN_FILE_NAME;
+    }
+
+    @Override
+    protected InstallPlan createInstance(String json) {
+        return InstallPlan.fromJson(json);
+    }
+
+    @Override
+    protected String getFullPathForFileInFolder(String folder) {
+        return Paths.get(folder, fileName);
+    }
+}
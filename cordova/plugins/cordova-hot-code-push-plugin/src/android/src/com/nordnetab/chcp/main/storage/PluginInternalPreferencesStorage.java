@@ -36,9 +36,8 @@ public class PluginInternalPreferencesStorage implements IObjectPreferenceStorag
             return false;
         }
 
-        preferences.edit().putString(PREF_KEY, config.toString()).apply();
-
-        return true;
+        // written synchronously: current release is switched only when preferences are on the disk
+        return preferences.edit().putString(PREF_KEY, config.toString()).commit();
     }
 
     @Override
@@ -0,0 +1,34 @@
+package com.nordnetab.chcp.main.storage;
+
+import com.nordnetab.chcp.main.model.PluginFilesStructure;
+import com.nordnetab.chcp.main.network.ResponseValidators;
+import com.nordnetab.chcp.main.utils.Paths;
+
+/**
+ * Utility class to save and load HTTP response validators from the certain folder.
+ * Validators are stored next to the application config and content manifest, which they describe.
+ *
+ * @see ResponseValidators
+ * @see IObjectFileStorage
+ */
+public class ResponseValidatorsStorage extends FileStorageAbs<ResponseValidators> {
+
+    private final String fileName;
+
+    /**
+     * Class constructor
+     */
+    public ResponseValidatorsStorage() {
+        fileName = PluginFilesStructure.VALIDATORS_FILE_NAME;
+    }
+
+    @Override
+    protected ResponseValidators createInstance(String json) {
+        return ResponseValidators.fromJson(json);
+    }
+
+    @Override
+    protected String getFullPathForFileInFolder(String folder) {
+        return Paths.get(folder, fileName);
+    }
+}
@@ -0,0 +1,249 @@
+package com.nordnetab.chcp.main.updater;
+
+import android.util.Log;
+
+import com.nordnetab.chcp.main.model.PluginFilesStructure;
+import com.nordnetab.chcp.main.utils.FilesUtility;
+import com.nordnetab.chcp.main.utils.Paths;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Journal of the update installation.
+ * Stored in the content folder of the new release and records the installation steps, that are completed.
+ * If application is killed during the installation - next attempt continues after the last recorded step,
+ * instead of building the release from the beginning.
+ * <p/>
+ * Journal is an append-only text file. First line describes the installation:
+ * <code>install current_version layered|full</code>; each next line is the name of the completed step.
+ * Every record is synced to the disk before the next step starts. Journal is removed only when the new release
+ * becomes the current one, so the installation is finished again, if application is killed before that.
+ * <p/>
+ * Used internally.
+ *
+ * @see InstallationWorker
+ */
+class InstallJournal {
+
+    /**
+     * Steps of the installation in the order of their execution.
+     */
+    enum Step {
+        /**
+         * Nothing is done yet.
+         */
+        NONE,
+
+        /**
+         * Loaded files are verified.
+         */
+        VERIFIED,
+
+        /**
+         * www folder of the new release is built from the current release; loaded files are not moved into it yet.
+         */
+        PREPARED,
+
+        /**
+         * Loaded files are moved into www folder and release is checked to be complete.
+         */
+        INSTALLED
+    }
+
+    private static final String HEADER_KEY = "install";
+    private static final String LAYERED = "layered";
+    private static final String FULL = "full";
+
+    private final File journalFile;
+    private final String header;
+    private Step lastStep;
+    private FileOutputStream output;
+
+    /**
+     * Check if there is a journal of the installation in the given folder.
+     *
+     * @param contentFolder absolute path to the content folder of the new release
+     * @return <code>true</code> if folder has an installation journal; <code>false</code> - otherwise
+     */
+    static boolean existsInFolder(final String contentFolder) {
+        return getJournalFile(contentFolder).exists();
+    }
+
+    /**
+     * Remove installation journal from the folder.
+     *
+     * @param contentFolder absolute path to the content folder of the new release
+     */
+    static void deleteInFolder(final String contentFolder) {
+        FilesUtility.delete(getJournalFile(contentFolder));
+    }
+
+    /**
+     * Open journal in the given content folder.
+     * If journal was written for the installation on top of the other release - it is started from the beginning.
+     * Installation doesn't depend on the journal: if it can't be written - steps are kept only in memory.
+     *
+     * @param contentFolder  absolute path to the content folder of the new release
+     * @param currentVersion version of the release, on top of which update is installed
+     * @param isLayered      if new release is stored as a layer
+     * @return installation journal
+     */
+    static InstallJournal open(final String contentFolder, final String currentVersion, final boolean isLayered) {
+        final String header = HEADER_KEY + " " + currentVersion + " " + (isLayered ? LAYERED : FULL);
+        final InstallJournal journal = new InstallJournal(getJournalFile(contentFolder), header);
+        try {
+            final boolean isLoaded = journal.load(header);
+
+            // installed release is complete, no matter on top of which release it was built
+            if (!isLoaded && journal.lastStep != Step.INSTALLED) {
+                journal.lastStep = Step.NONE;
+                FilesUtility.ensureDirectoryExists(contentFolder);
+                journal.output = new FileOutputStream(journal.journalFile, false);
+                journal.append(header);
+            } else {
+                journal.output = new FileOutputStream(journal.journalFile, true);
+
+                // separate new records from the line, that might be left incomplete
+                journal.append("");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            journal.close();
+        }
+
+        return journal;
+    }
+
+    private InstallJournal(final File journalFile, final String header) {
+        this.journalFile = journalFile;
+        this.header = header;
+        this.lastStep = Step.NONE;
+    }
+
+    /**
+     * Getter for the last completed step.
+     *
+     * @return last step; <code>Step.NONE</code> - if installation is just started
+     */
+    Step getLastStep() {
+        return lastStep;
+    }
+
+    /**
+     * Check if step was completed by this or the previous installation attempt.
+     *
+     * @param step step to check
+     * @return <code>true</code> if step is completed; <code>false</code> - otherwise
+     */
+    boolean isCompleted(final Step step) {
+        return lastStep.ordinal() >= step.ordinal();
+    }
+
+    /**
+     * Record, that step is completed.
+     * Record is synced to the disk before the method returns.
+     *
+     * @param step completed step
+     */
+    void markCompleted(final Step step) {
+        lastStep = step;
+        if (output == null) {
+            return;
+        }
+
+        try {
+            append(step.name());
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Forget all completed steps, so the next attempt starts the installation from the beginning.
+     * Journal itself is kept: it tells, that release is not installed yet.
+     */
+    void restart() {
+        lastStep = Step.NONE;
+        close();
+
+        try {
+            output = new FileOutputStream(journalFile, false);
+            append(header);
+        } catch (IOException e) {
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Close the journal.
+     */
+    void close() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        output = null;
+    }
+
+    // region Private API
+
+    private static File getJournalFile(final String contentFolder) {
+        return new File(Paths.get(contentFolder, PluginFilesStructure.INSTALL_JOURNAL_FILE_NAME));
+    }
+
+    private void append(final String line) throws IOException {
+        output.write((line + "\n").getBytes("UTF-8"));
+        output.flush();
+        output.getFD().sync();
+    }
+
+    /**
+     * Load the journal.
+     *
+     * @param expectedHeader header of the current installation
+     * @return <code>true</code> if journal belongs to the current installation; <code>false</code> - otherwise
+     * @throws IOException if failed to read the journal
+     */
+    private boolean load(final String expectedHeader) throws IOException {
+        if (!journalFile.exists()) {
+            return false;
+        }
+
+        boolean isHeaderMatched = false;
+        final BufferedReader reader = new BufferedReader(new FileReader(journalFile));
+        try {
+            isHeaderMatched = expectedHeader.equals(reader.readLine());
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    final Step step = Step.valueOf(line);
+                    if (step.ordinal() > lastStep.ordinal()) {
+                        lastStep = step;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // line was not written completely
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        Log.d("CHCP", "Found installation journal, last completed step: " + lastStep);
+
+        return isHeaderMatched;
+    }
+
+    // endregion
+}
@@ -1,6 +1,7 @@
 package com.nordnetab.chcp.main.updater;
 
 import android.content.Context;
+import android.util.Log;
 
 import com.nordnetab.chcp.main.config.ApplicationConfig;
 import com.nordnetab.chcp.main.config.ContentManifest;
@@ -9,34 +10,51 @@ import com.nordnetab.chcp.main.events.UpdateInstallationErrorEvent;
 import com.nordnetab.chcp.main.events.UpdateInstalledEvent;
 import com.nordnetab.chcp.main.events.WorkerEvent;
 import com.nordnetab.chcp.main.model.ChcpError;
+import com.nordnetab.chcp.main.model.InstallPlan;
+import com.nordnetab.chcp.main.model.LayeredRelease;
 import com.nordnetab.chcp.main.model.ManifestDiff;
 import com.nordnetab.chcp.main.model.ManifestFile;
 import com.nordnetab.chcp.main.model.PluginFilesStructure;
 import com.nordnetab.chcp.main.storage.ApplicationConfigStorage;
 import com.nordnetab.chcp.main.storage.ContentManifestStorage;
 import com.nordnetab.chcp.main.storage.IObjectFileStorage;
+import com.nordnetab.chcp.main.storage.InstallPlanStorage;
+import com.nordnetab.chcp.main.utils.FileHashIndex;
 import com.nordnetab.chcp.main.utils.FilesUtility;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Created by Nikolay Demyankov on 28.07.15.
  * <p/>
  * Worker, that implements installation logic.
  * During the installation process events are dispatched to notify the subscribers about the progress.
+ * Completed steps are recorded in the installation journal, so interrupted installation continues from where it stopped.
  * <p/>
  * Used internally.
  */
 class InstallationWorker implements WorkerTask {
 
+    private final Context context;
+    private final String newVersion;
+    private final String currentVersion;
+    private final boolean isParanoid;
+    private final boolean isLayered;
+
     private ManifestDiff manifestDiff;
+    private InstallPlan installPlan;
     private ApplicationConfig newAppConfig;
 
     private PluginFilesStructure newReleaseFS;
     private PluginFilesStructure currentReleaseFS;
 
+    private InstallJournal journal;
     private WorkerEvent resultEvent;
 
     /**
@@ -45,40 +63,84 @@ class InstallationWorker implements WorkerTask {
      * @param context        application context
      * @param newVersion     version to install
      * @param currentVersion current content version
+     * @param isParanoid     if <code>true</code> - hashes, that were checked during the download, are not trusted
+     * @param isLayered      if <code>true</code> - new release is stored as a layer on top of the current one
      */
-    public InstallationWorker(final Context context, final String newVersion, final String currentVersion) {
+    public InstallationWorker(final Context context, final String newVersion, final String currentVersion,
+                              final boolean isParanoid, final boolean isLayered) {
+        this.context = context;
+        this.newVersion = newVersion;
+        this.currentVersion = currentVersion;
+        this.isParanoid = isParanoid;
+        this.isLayered = isLayered;
         newReleaseFS = new PluginFilesStructure(context, newVersion);
         currentReleaseFS = new PluginFilesStructure(context, currentVersion);
     }
 
     @Override
     public void run() {
+        journal = InstallJournal.open(newReleaseFS.getContentFolder(), currentVersion, isLayered);
+        try {
+            install();
+        } finally {
+            journal.close();
+        }
+    }
+
+    private void install() {
+        if (journal.getLastStep() != InstallJournal.Step.NONE) {
+            Log.d("CHCP", "Continuing installation of the release " + newVersion + " after step " + journal.getLastStep());
+        }
+
         // try to initialize before run
         if (!init()) {
             return;
         }
 
         // validate update
-        if (!isUpdateValid(newReleaseFS.getDownloadFolder(), manifestDiff)) {
-            setResultForError(ChcpError.UPDATE_IS_INVALID);
-            return;
+        if (!journal.isCompleted(InstallJournal.Step.VERIFIED)) {
+            if (!isUpdateValid(newReleaseFS.getDownloadFolder(), manifestDiff)) {
+                setResultForError(ChcpError.UPDATE_IS_INVALID);
+                return;
+            }
+            journal.markCompleted(InstallJournal.Step.VERIFIED);
         }
 
-        // copy content from the current release to the new release folder
-        if (!copyFilesFromCurrentReleaseToNewRelease()) {
-            setResultForError(ChcpError.FAILED_TO_COPY_FILES_FROM_PREVIOUS_RELEASE);
-            return;
-        }
+        if (!journal.isCompleted(InstallJournal.Step.PREPARED)) {
+            if (isLayered) {
+                // new release keeps only the loaded files, everything else is taken from the current release
+                if (!createLayerOnCurrentRelease()) {
+                    setResultForError(ChcpError.FAILED_TO_COPY_FILES_FROM_PREVIOUS_RELEASE);
+                    return;
+                }
+            } else {
+                // copy content from the current release to the new release folder
+                if (!copyFilesFromCurrentReleaseToNewRelease()) {
+                    setResultForError(ChcpError.FAILED_TO_COPY_FILES_FROM_PREVIOUS_RELEASE);
+                    return;
+                }
 
-        // remove old manifest files
-        deleteUnusedFiles();
+                // remove old manifest files
+                deleteUnusedFiles();
+            }
+            journal.markCompleted(InstallJournal.Step.PREPARED);
+        }
 
-        // install the update
-        boolean isInstalled = moveFilesFromInstallationFolderToWwwFodler();
-        if (!isInstalled) {
-            cleanUpOnFailure();
-            setResultForError(ChcpError.FAILED_TO_COPY_NEW_CONTENT_FILES);
-            return;
+        if (!journal.isCompleted(InstallJournal.Step.INSTALLED)) {
+            // plan and hash index are not part of the web content
+            FilesUtility.delete(new File(newReleaseFS.getDownloadFolder(), PluginFilesStructure.INSTALL_PLAN_FILE_NAME));
+            FilesUtility.delete(new File(newReleaseFS.getDownloadFolder(), PluginFilesStructure.HASH_INDEX_FILE_NAME));
+
+            // install the update; files, that were moved before the interruption, are already in place
+            final List<String> loadedFiles = new ArrayList<String>();
+            listFiles(new File(newReleaseFS.getDownloadFolder()), "", loadedFiles);
+            boolean isInstalled = moveFilesFromInstallationFolderToWwwFodler() && isReleaseComplete();
+            if (!isInstalled) {
+                cleanUpOnFailure(loadedFiles);
+                setResultForError(ChcpError.FAILED_TO_COPY_NEW_CONTENT_FILES);
+                return;
+            }
+            journal.markCompleted(InstallJournal.Step.INSTALLED);
         }
 
         // perform cleaning
@@ -97,11 +159,37 @@ class InstallationWorker implements WorkerTask {
         // loaded application config
         IObjectFileStorage<ApplicationConfig> appConfigStorage = new ApplicationConfigStorage();
         newAppConfig = appConfigStorage.loadFromFolder(newReleaseFS.getDownloadFolder());
+
+        // config might be already moved into www folder by the interrupted installation
+        if (newAppConfig == null && journal.isCompleted(InstallJournal.Step.PREPARED)) {
+            newAppConfig = appConfigStorage.loadFromFolder(newReleaseFS.getWwwFolder());
+        }
+
         if (newAppConfig == null) {
             setResultForError(ChcpError.LOADED_VERSION_OF_APPLICATION_CONFIG_NOT_FOUND);
             return false;
         }
 
+        // release folder is already built, difference is not needed anymore
+        if (journal.isCompleted(InstallJournal.Step.PREPARED)) {
+            return true;
+        }
+
+        // new release is built from the files of the current one
+        if (!LayeredRelease.load(context, currentVersion).isComplete()) {
+            setResultForError(ChcpError.LOCAL_VERSION_OF_RELEASE_IS_INCOMPLETE);
+            return false;
+        }
+
+        // use the difference, that was calculated by the loader
+        installPlan = new InstallPlanStorage().loadFromFolder(newReleaseFS.getDownloadFolder());
+        if (installPlan != null && installPlan.isFor(currentVersion, newVersion)) {
+            manifestDiff = installPlan.getDiff();
+            return true;
+        }
+        installPlan = null;
+        Log.d("CHCP", "Install plan is missing or outdated, comparing manifests");
+
         // old manifest file
         IObjectFileStorage<ContentManifest> manifestStorage = new ContentManifestStorage();
         ContentManifest oldManifest = manifestStorage.loadFromFolder(currentReleaseFS.getWwwFolder());
@@ -124,13 +212,15 @@ class InstallationWorker implements WorkerTask {
     }
 
     /**
-     * Copy all files from the previous release folder to the new release folder.
+     * Create content of the new release from the previous one.
+     * If previous release is layered - it's layers are merged into the new release.
+     * Unchanged files are hard linked, if file system supports that; otherwise - copied.
+     * Files, that are updated or removed by the new release, are not taken.
      *
      * @return <code>true</code> if files are copied; <code>false</code> - otherwise.
      */
     private boolean copyFilesFromCurrentReleaseToNewRelease() {
         boolean result = true;
-        final File currentWwwFolder = new File(currentReleaseFS.getWwwFolder());
         final File newWwwFolder = new File(newReleaseFS.getWwwFolder());
         try {
             // just in case if www folder already exists - remove it
@@ -138,7 +228,23 @@ class InstallationWorker implements WorkerTask {
                 FilesUtility.delete(newWwwFolder);
             }
 
-            FilesUtility.copy(currentWwwFolder, newWwwFolder);
+            // new release is stored in full
+            LayeredRelease.removeLayer(newReleaseFS);
+
+            final Set<String> skippedFiles = new HashSet<String>();
+            for (ManifestFile file : manifestDiff.getUpdateFiles()) {
+                skippedFiles.add(file.name);
+            }
+            for (ManifestFile file : manifestDiff.deletedFiles()) {
+                skippedFiles.add(file.name);
+            }
+
+            // manifest of the new release is moved from the download folder
+            skippedFiles.add(PluginFilesStructure.MANIFEST_FILE_NAME);
+            skippedFiles.add(PluginFilesStructure.BINARY_MANIFEST_FILE_NAME);
+
+            final LayeredRelease currentRelease = LayeredRelease.load(context, currentVersion);
+            new ReleaseFolderCloner(skippedFiles).cloneRelease(currentRelease, newWwwFolder);
         } catch (Exception e) {
             e.printStackTrace();
             result = false;
@@ -147,11 +253,83 @@ class InstallationWorker implements WorkerTask {
         return result;
     }
 
+    /**
+     * Store new release as a layer on top of the current one.
+     * Files, that are removed by the update, are recorded in the layer instead of being deleted.
+     *
+     * @return <code>true</code> if layer is created; <code>false</code> - otherwise
+     */
+    private boolean createLayerOnCurrentRelease() {
+        final File newWwwFolder = new File(newReleaseFS.getWwwFolder());
+        if (newWwwFolder.exists()) {
+            FilesUtility.delete(newWwwFolder);
+        }
+
+        final List<String> deletedFiles = new ArrayList<String>();
+        for (ManifestFile file : manifestDiff.deletedFiles()) {
+            deletedFiles.add(file.name);
+        }
+
+        try {
+            LayeredRelease.createLayer(newReleaseFS, currentVersion, deletedFiles);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
     /**
      * Perform cleaning when we failed to install the update.
+     * Loaded files are moved back into the download folder, and only the www folder of the new release is removed.
+     * Journal is started from the beginning, so the next attempt verifies the loaded files and builds the release again.
+     *
+     * @param loadedFiles relative paths of the files, that were in the download folder before the installation
      */
-    private void cleanUpOnFailure() {
-        FilesUtility.delete(newReleaseFS.getContentFolder());
+    private void cleanUpOnFailure(final List<String> loadedFiles) {
+        final File downloadFolder = new File(newReleaseFS.getDownloadFolder());
+        final File wwwFolder = new File(newReleaseFS.getWwwFolder());
+        for (String fileName : loadedFiles) {
+            final File movedFile = new File(wwwFolder, fileName);
+            final File loadedFile = new File(downloadFolder, fileName);
+            if (loadedFile.exists() || !movedFile.exists()) {
+                continue;
+            }
+
+            try {
+                FilesUtility.move(movedFile, loadedFile);
+            } catch (IOException e) {
+                Log.d("CHCP", "Failed to return loaded file " + fileName + " into download folder", e);
+            }
+        }
+
+        FilesUtility.delete(wwwFolder);
+        LayeredRelease.removeLayer(newReleaseFS);
+        journal.restart();
+    }
+
+    /**
+     * Collect relative paths of all files in the folder.
+     *
+     * @param folder folder to scan
+     * @param prefix relative path of the folder
+     * @param files  where to put the paths
+     */
+    private static void listFiles(final File folder, final String prefix, final List<String> files) {
+        final File[] children = folder.listFiles();
+        if (children == null) {
+            return;
+        }
+
+        for (File child : children) {
+            final String relativePath = prefix + child.getName();
+            if (child.isDirectory()) {
+                listFiles(child, relativePath + "/", files);
+            } else {
+                files.add(relativePath);
+            }
+        }
     }
 
     /**
@@ -173,13 +351,17 @@ class InstallationWorker implements WorkerTask {
     }
 
     /**
-     * Copy downloaded files into www folder
+     * Move downloaded files into www folder.
+     * Files are renamed, so install time depends on the number of files, not on their size.
      *
-     * @return <code>true</code> if files are copied; <code>false</code> - otherwise
+     * @return <code>true</code> if files are moved; <code>false</code> - otherwise
      */
     private boolean moveFilesFromInstallationFolderToWwwFodler() {
         try {
-            FilesUtility.copy(newReleaseFS.getDownloadFolder(), newReleaseFS.getWwwFolder());
+            final int copiedFilesCount = FilesUtility.move(new File(newReleaseFS.getDownloadFolder()), new File(newReleaseFS.getWwwFolder()));
+            if (copiedFilesCount > 0) {
+                Log.d("CHCP", "Failed to rename " + copiedFilesCount + " loaded files, they were copied into www folder");
+            }
 
             return true;
         } catch (IOException e) {
@@ -189,9 +371,45 @@ class InstallationWorker implements WorkerTask {
         }
     }
 
+    /**
+     * Check, that all files of the new release are in place.
+     * Content of the files is not read: it was verified before the installation.
+     *
+     * @return <code>true</code> if release is complete; <code>false</code> - otherwise
+     */
+    private boolean isReleaseComplete() {
+        final ApplicationConfig installedConfig = new ApplicationConfigStorage().loadFromFolder(newReleaseFS.getWwwFolder());
+        if (installedConfig == null || !newVersion.equals(installedConfig.getContentConfig().getReleaseVersion())) {
+            Log.d("CHCP", "Application config of the release " + newVersion + " is not installed");
+            return false;
+        }
+
+        final ContentManifest manifest = new ContentManifestStorage().loadFromFolder(newReleaseFS.getWwwFolder());
+        if (manifest == null) {
+            Log.d("CHCP", "Content manifest of the release " + newVersion + " is not installed");
+            return false;
+        }
+
+        final LayeredRelease release = LayeredRelease.load(context, newVersion);
+        if (!release.isComplete()) {
+            Log.d("CHCP", "Layers of the release " + newVersion + " are missing");
+            return false;
+        }
+
+        for (ManifestFile file : manifest.getFiles()) {
+            if (release.resolve(file.name) == null) {
+                Log.d("CHCP", "File " + file.name + " is missing in the release " + newVersion);
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * Check if update is ready for installation.
      * We will check, if all files are loaded and their hashes are correct.
+     * Files, that were verified during the download and not changed since then, are trusted, unless we are in paranoid mode.
      *
      * @param downloadFolderPath folder, where our files are situated
      * @param manifestDiff       difference between old and the new manifest. Holds information about updated files.
@@ -203,26 +421,31 @@ class InstallationWorker implements WorkerTask {
             return false;
         }
 
-        boolean isValid = true;
         List<ManifestFile> updateFileList = manifestDiff.getUpdateFiles();
 
-        for (ManifestFile updatedFile : updateFileList) {
-            File file = new File(downloadFolder, updatedFile.name);
-
-            try {
-                if (!file.exists() ||
-                        !FilesUtility.calculateFileHash(file).equals(updatedFile.hash)) {
-                    isValid = false;
-                    break;
+        // size mismatch is found without reading the files
+        if (installPlan != null) {
+            for (ManifestFile updatedFile : updateFileList) {
+                final long expectedSize = installPlan.getFileSize(updatedFile.name);
+                if (expectedSize >= 0 && new File(downloadFolder, updatedFile.name).length() != expectedSize) {
+                    Log.d("CHCP", "Size of the file " + updatedFile.name + " doesn't match the install plan");
+                    return false;
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
-                isValid = false;
-                break;
             }
         }
 
-        return isValid;
+        HashAlgorithm hashAlgorithm = newAppConfig.getContentConfig().getHashAlgorithm();
+        if (isParanoid) {
+            return new ParallelFilesVerifier(hashAlgorithm, null).verify(downloadFolder, updateFileList);
+        }
+
+        // files, that are not changed since they were verified by the loader, are not hashed again
+        FileHashIndex hashIndex = FileHashIndex.openInFolder(downloadFolderPath, PluginFilesStructure.HASH_INDEX_FILE_NAME);
+        try {
+            return new ParallelFilesVerifier(hashAlgorithm, hashIndex).verify(downloadFolder, updateFileList);
+        } finally {
+            hashIndex.close();
+        }
     }
 
     // region Events
@@ -0,0 +1,189 @@
+package com.nordnetab.chcp.main.updater;
+
+import android.util.Log;
+
+import com.nordnetab.chcp.main.config.ContentManifest;
+import com.nordnetab.chcp.main.model.LayeredRelease;
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.network.DownloadJournal;
+import com.nordnetab.chcp.main.utils.FilesUtility;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
+import com.nordnetab.chcp.main.utils.Hasher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the content, that is already on the device, by the hash of the file.
+ * Built from the manifests of the current release and the other releases, that are still kept on the disk.
+ * <p/>
+ * Used to find files of the update, that we already have under a different path (file was moved, renamed,
+ * or it is a copy of another file, or it was present in one of the previous releases).
+ * Such files are hard linked (or copied, if links are not supported) into the download folder
+ * instead of loading them from the server.
+ * <p/>
+ * Used internally.
+ */
+class LocalContentIndex {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final HashAlgorithm hashAlgorithm;
+    private final Map<String, File> filesByHash;
+    private long bytesSaved;
+    private int filesReused;
+
+    /**
+     * Class constructor.
+     * Creates empty index.
+     *
+     * @param hashAlgorithm algorithm, with which hashes of the files are calculated
+     */
+    LocalContentIndex(final HashAlgorithm hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+        filesByHash = new HashMap<String, File>();
+    }
+
+    /**
+     * Add content of the www folder to the index.
+     *
+     * @param wwwFolder absolute path to the www folder
+     * @param manifest  manifest of the folder
+     */
+    void addFolder(final String wwwFolder, final ContentManifest manifest) {
+        for (ManifestFile file : manifest.getFiles()) {
+            if (filesByHash.containsKey(file.hash)) {
+                continue;
+            }
+
+            final File localFile = new File(wwwFolder, file.name);
+            if (localFile.isFile()) {
+                filesByHash.put(file.hash, localFile);
+            }
+        }
+    }
+
+    /**
+     * Add content of the release to the index.
+     * If release is layered - files are searched in all of it's layers.
+     *
+     * @param release  release
+     * @param manifest manifest of the release
+     */
+    void addRelease(final LayeredRelease release, final ContentManifest manifest) {
+        for (ManifestFile file : manifest.getFiles()) {
+            if (filesByHash.containsKey(file.hash)) {
+                continue;
+            }
+
+            final File localFile = release.resolve(file.name);
+            if (localFile != null) {
+                filesByHash.put(file.hash, localFile);
+            }
+        }
+    }
+
+    /**
+     * Put into the download folder files, that we already have on the device.
+     *
+     * @param downloadFolder absolute path to the download folder
+     * @param files          files of the update
+     * @param journal        journal of the download, in which reused files are marked as loaded; can be <code>null</code>
+     * @return list of files, that should be loaded from the server
+     */
+    List<ManifestFile> reuseLocalFiles(final String downloadFolder, final List<ManifestFile> files, final DownloadJournal journal) {
+        final List<ManifestFile> filesToLoad = new ArrayList<ManifestFile>();
+        for (ManifestFile file : files) {
+            if (journal != null && journal.isCompleted(file)) {
+                continue;
+            }
+
+            final File localFile = filesByHash.get(file.hash);
+            if (localFile == null || !placeFile(localFile, new File(downloadFolder, file.name), file.hash)) {
+                filesToLoad.add(file);
+                continue;
+            }
+
+            try {
+                if (journal != null) {
+                    journal.markCompleted(file);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (filesReused > 0) {
+            Log.d("CHCP", "Reused " + filesReused + " local files, saved " + bytesSaved + " bytes of download");
+        }
+
+        return filesToLoad;
+    }
+
+    // region Private API
+
+    private boolean placeFile(final File localFile, final File destinationFile, final String hash) {
+        FilesUtility.delete(destinationFile);
+        FilesUtility.ensureDirectoryExists(destinationFile.getParentFile());
+
+        // download folder is verified before the installation, so linked file is not hashed here
+        boolean isPlaced = FilesUtility.createHardLink(localFile, destinationFile);
+        if (!isPlaced) {
+            isPlaced = copyWithHashCheck(localFile, destinationFile, hash);
+        }
+
+        if (isPlaced) {
+            filesReused++;
+            bytesSaved += destinationFile.length();
+        }
+
+        return isPlaced;
+    }
+
+    private boolean copyWithHashCheck(final File fromFile, final File toFile, final String hash) {
+        final Hasher hasher = hashAlgorithm.newHasher();
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(fromFile));
+            try {
+                final OutputStream out = new BufferedOutputStream(new FileOutputStream(toFile));
+                try {
+                    final byte[] buffer = new byte[BUFFER_SIZE];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, count);
+                        hasher.write(buffer, count);
+                    }
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            hasher.release();
+            FilesUtility.delete(toFile);
+            return false;
+        }
+
+        if (!hasher.matches(hash)) {
+            Log.d("CHCP", "Local file " + fromFile.getAbsolutePath() + " doesn't match it's hash, it will be loaded from server");
+            FilesUtility.delete(toFile);
+            return false;
+        }
+
+        return true;
+    }
+
+    // endregion
+}
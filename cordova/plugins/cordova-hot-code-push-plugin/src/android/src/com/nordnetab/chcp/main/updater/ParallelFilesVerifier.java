@@ -0,0 +1,155 @@
+package com.nordnetab.chcp.main.updater;
+
+import android.util.Log;
+
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.utils.FileHashIndex;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
+import com.nordnetab.chcp.main.utils.Hasher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks hashes of the files in parallel.
+ * Files are hashed by the pool of threads, sized to the number of the processor cores.
+ * Verification stops on the first missing or corrupted file: tasks, that are still hashing, are interrupted.
+ * If hash index is provided - files, that are not changed since they were hashed, are not read.
+ * <p/>
+ * Used internally.
+ */
+class ParallelFilesVerifier {
+
+    private final HashAlgorithm hashAlgorithm;
+    private final FileHashIndex hashIndex;
+
+    /**
+     * Class constructor.
+     *
+     * @param hashAlgorithm algorithm, with which hashes of the files are calculated
+     * @param hashIndex     index with the known hashes of the files; can be <code>null</code>
+     */
+    ParallelFilesVerifier(final HashAlgorithm hashAlgorithm, final FileHashIndex hashIndex) {
+        this.hashAlgorithm = hashAlgorithm;
+        this.hashIndex = hashIndex;
+    }
+
+    /**
+     * Check, that all files exist and their hashes are correct.
+     *
+     * @param folder folder, where files are located
+     * @param files  files to check
+     * @return <code>true</code> if all files are valid; <code>false</code> - otherwise
+     */
+    boolean verify(final File folder, final List<ManifestFile> files) {
+        if (files.isEmpty()) {
+            return true;
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final int poolSize = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), files.size()));
+        final ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+        final CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
+        final AtomicBoolean isCancelled = new AtomicBoolean(false);
+        final AtomicLong bytesHashed = new AtomicLong(0);
+        final List<Future<Boolean>> tasks = new ArrayList<Future<Boolean>>(files.size());
+
+        boolean isValid = true;
+        try {
+            for (ManifestFile file : files) {
+                tasks.add(completionService.submit(new VerifyTask(folder, file, isCancelled, bytesHashed)));
+            }
+
+            for (int i = 0, count = tasks.size(); i < count && isValid; i++) {
+                isValid = completionService.take().get();
+            }
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+            isValid = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            isValid = false;
+        } finally {
+            isCancelled.set(true);
+            for (Future<Boolean> task : tasks) {
+                task.cancel(true);
+            }
+            executor.shutdownNow();
+        }
+
+        final long duration = Math.max(1, System.currentTimeMillis() - startTime);
+        final double megabytesPerSecond = bytesHashed.get() / 1024.0 / 1024.0 / (duration / 1000.0);
+        Log.d("CHCP", "Verified " + bytesHashed.get() + " bytes in " + duration + " ms with " + poolSize + " threads: "
+                + String.format(Locale.US, "%.1f", megabytesPerSecond) + " MB/s" + (isValid ? "" : ", found invalid file"));
+
+        return isValid;
+    }
+
+    /**
+     * Task to check the hash of the single file.
+     */
+    private class VerifyTask implements Callable<Boolean> {
+
+        private final File file;
+        private final String name;
+        private final String hash;
+        private final AtomicBoolean isCancelled;
+        private final AtomicLong bytesHashed;
+
+        VerifyTask(File folder, ManifestFile manifestFile, AtomicBoolean isCancelled, AtomicLong bytesHashed) {
+            this.file = new File(folder, manifestFile.name);
+            this.name = manifestFile.name;
+            this.hash = manifestFile.hash;
+            this.isCancelled = isCancelled;
+            this.bytesHashed = bytesHashed;
+        }
+
+        @Override
+        public Boolean call() {
+            if (isCancelled.get()) {
+                return false;
+            }
+
+            if (!file.exists()) {
+                Log.d("CHCP", "File " + file.getAbsolutePath() + " is missing");
+                return false;
+            }
+
+            if (hashIndex != null && hash.equals(hashIndex.getHash(name, hashAlgorithm))) {
+                return true;
+            }
+
+            final Hasher hasher = hashAlgorithm.newHasher();
+            try {
+                bytesHashed.addAndGet(hasher.writeFile(file));
+            } catch (IOException e) {
+                hasher.release();
+
+                // other file is already found invalid, and this task was interrupted
+                if (!isCancelled.get()) {
+                    e.printStackTrace();
+                }
+                return false;
+            }
+
+            if (!hasher.matches(hash)) {
+                Log.d("CHCP", "File " + file.getAbsolutePath() + " doesn't match it's hash " + hash);
+                return false;
+            }
+
+            return true;
+        }
+    }
+}
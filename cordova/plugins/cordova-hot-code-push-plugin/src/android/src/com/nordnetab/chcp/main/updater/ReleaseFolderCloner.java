@@ -0,0 +1,118 @@
+package com.nordnetab.chcp.main.updater;
+
+import android.util.Log;
+
+import com.nordnetab.chcp.main.model.LayeredRelease;
+import com.nordnetab.chcp.main.utils.FilesUtility;
+import com.nordnetab.chcp.main.utils.ParallelFilesCopier;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Creates content of the new release from the current one.
+ * Files are not copied, but hard linked into the new release folder, so unchanged content takes no additional space
+ * and no time to write. Byte copy is used only when file system doesn't support links;
+ * in that case files are copied concurrently after the release is walked through.
+ * Files, that are replaced or removed by the update, are skipped: only the loaded files are written physically.
+ * Layered release is cloned into the full one, so the same class is used to compact the chain of layers.
+ * <p/>
+ * Linked files share the data with the current release, so they must never be modified in place.
+ * <p/>
+ * Used internally.
+ */
+class ReleaseFolderCloner {
+
+    private final Set<String> skippedFiles;
+    private boolean isLinkingSupported;
+
+    private int filesLinked;
+    private long bytesLinked;
+    private int filesCopied;
+    private long bytesCopied;
+
+    /**
+     * Class constructor.
+     *
+     * @param skippedFiles relative paths of the files, that should not be taken from the current release
+     */
+    ReleaseFolderCloner(final Set<String> skippedFiles) {
+        this.skippedFiles = skippedFiles;
+        this.isLinkingSupported = true;
+    }
+
+    /**
+     * Clone content of the release.
+     * If release is layered - files are taken from all of it's layers.
+     * Files, that already exist in the destination folder, are not replaced.
+     *
+     * @param release  current release
+     * @param toFolder www folder of the new release
+     * @throws IOException if failed to copy the file
+     */
+    void cloneRelease(final LayeredRelease release, final File toFolder) throws IOException {
+        cloneFiles(release, toFolder, false);
+    }
+
+    /**
+     * Clone files, that release takes from it's parent layers.
+     * Files of the top layer are skipped: they are already in the www folder of the release.
+     *
+     * @param release  layered release
+     * @param toFolder destination folder
+     * @throws IOException if failed to copy the file
+     */
+    void cloneParentLayers(final LayeredRelease release, final File toFolder) throws IOException {
+        cloneFiles(release, toFolder, true);
+    }
+
+    // region Private API
+
+    private void cloneFiles(final LayeredRelease release, final File toFolder, final boolean skipTopLayer) throws IOException {
+        final long startTime = System.currentTimeMillis();
+        FilesUtility.ensureDirectoryExists(toFolder);
+
+        final String topLayerFolder = release.getWwwFolder() + File.separator;
+        final ParallelFilesCopier copier = new ParallelFilesCopier();
+        release.visitFiles(new LayeredRelease.FileVisitor() {
+            @Override
+            public void visitFile(String relativePath, File file) throws IOException {
+                final File toFile = new File(toFolder, relativePath);
+                if (skippedFiles.contains(relativePath) || toFile.exists()
+                        || (skipTopLayer && file.getPath().startsWith(topLayerFolder))) {
+                    return;
+                }
+
+                FilesUtility.ensureDirectoryExists(toFile.getParentFile());
+                cloneFile(file, toFile, copier);
+            }
+        });
+        copier.execute();
+
+        Log.d("CHCP", "Release created in " + (System.currentTimeMillis() - startTime) + " ms: "
+                + filesLinked + " files (" + bytesLinked + " bytes) linked, "
+                + filesCopied + " files (" + bytesCopied + " bytes) copied");
+    }
+
+    private void cloneFile(final File fromFile, final File toFile, final ParallelFilesCopier copier) {
+        final long length = fromFile.length();
+
+        // if first link failed - others will fail too
+        if (isLinkingSupported) {
+            if (FilesUtility.createHardLink(fromFile, toFile)) {
+                filesLinked++;
+                bytesLinked += length;
+                return;
+            }
+            isLinkingSupported = false;
+            Log.d("CHCP", "Hard links are not supported, falling back to copy");
+        }
+
+        copier.addFile(fromFile, toFile);
+        filesCopied++;
+        bytesCopied += length;
+    }
+
+    // endregion
+}
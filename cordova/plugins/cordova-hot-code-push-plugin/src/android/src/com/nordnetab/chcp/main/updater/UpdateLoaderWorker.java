@@ -11,22 +11,33 @@ import com.nordnetab.chcp.main.events.UpdateDownloadErrorEvent;
 import com.nordnetab.chcp.main.events.UpdateIsReadyToInstallEvent;
 import com.nordnetab.chcp.main.events.WorkerEvent;
 import com.nordnetab.chcp.main.model.ChcpError;
+import com.nordnetab.chcp.main.model.InstallPlan;
 import com.nordnetab.chcp.main.model.ManifestDiff;
+import com.nordnetab.chcp.main.model.LayeredRelease;
 import com.nordnetab.chcp.main.model.ManifestFile;
 import com.nordnetab.chcp.main.model.PluginFilesStructure;
 import com.nordnetab.chcp.main.network.ApplicationConfigDownloader;
+import com.nordnetab.chcp.main.network.ArchiveDownloader;
 import com.nordnetab.chcp.main.network.ContentManifestDownloader;
+import com.nordnetab.chcp.main.network.DownloadJournal;
 import com.nordnetab.chcp.main.network.DownloadResult;
-import com.nordnetab.chcp.main.network.FileDownloader;
+import com.nordnetab.chcp.main.network.ParallelFileDownloader;
+import com.nordnetab.chcp.main.network.ResponseValidators;
 import com.nordnetab.chcp.main.storage.ApplicationConfigStorage;
 import com.nordnetab.chcp.main.storage.ContentManifestStorage;
 import com.nordnetab.chcp.main.storage.IObjectFileStorage;
+import com.nordnetab.chcp.main.storage.InstallPlanStorage;
+import com.nordnetab.chcp.main.storage.ResponseValidatorsStorage;
 import com.nordnetab.chcp.main.utils.FilesUtility;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
 import com.nordnetab.chcp.main.utils.URLUtility;
 import com.nordnetab.chcp.main.utils.VersionHelper;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by Nikolay Demyankov on 28.07.15.
@@ -38,15 +49,27 @@ import java.util.List;
  */
 class UpdateLoaderWorker implements WorkerTask {
 
+    /**
+     * Minimal number of files in the update, starting from which they are loaded through the release archive.
+     * For smaller updates separate requests are cheaper, than loading the whole release.
+     */
+    private static final int MIN_FILES_COUNT_FOR_ARCHIVE = 10;
+
     private final String applicationConfigUrl;
     private final int appBuildVersion;
     private final PluginFilesStructure filesStructure;
+    private final Context context;
+    private final String currentVersion;
 
     private IObjectFileStorage<ApplicationConfig> appConfigStorage;
     private IObjectFileStorage<ContentManifest> manifestStorage;
+    private IObjectFileStorage<ResponseValidators> validatorsStorage;
 
     private ApplicationConfig oldAppConfig;
     private ContentManifest oldManifest;
+    private ResponseValidators responseValidators;
+    private String currentWwwFolder;
+    private LayeredRelease currentRelease;
 
     private WorkerEvent resultEvent;
 
@@ -59,6 +82,8 @@ class UpdateLoaderWorker implements WorkerTask {
      */
     public UpdateLoaderWorker(Context context, final String configUrl, final String currentVersion) {
         filesStructure = new PluginFilesStructure(context, currentVersion);
+        this.context = context;
+        this.currentVersion = currentVersion;
         applicationConfigUrl = configUrl;
         appBuildVersion = VersionHelper.applicationVersionCode(context);
     }
@@ -80,6 +105,11 @@ class UpdateLoaderWorker implements WorkerTask {
 
         // check if there is a new content version available
         if (newAppConfig.getContentConfig().getReleaseVersion().equals(oldAppConfig.getContentConfig().getReleaseVersion())) {
+            // remember validators of the loaded config, so next time server could respond with 304
+            if (newAppConfig != oldAppConfig) {
+                appConfigStorage.storeInFolder(newAppConfig, filesStructure.getWwwFolder());
+                validatorsStorage.storeInFolder(responseValidators, filesStructure.getWwwFolder());
+            }
             setNothingToUpdateResult(newAppConfig);
             return;
         }
@@ -100,17 +130,23 @@ class UpdateLoaderWorker implements WorkerTask {
         // find files that were updated
         ManifestDiff diff = oldManifest.calculateDifference(newContentManifest);
         if (diff.isEmpty()) {
-            manifestStorage.storeInFolder(newContentManifest, filesStructure.getWwwFolder());
+            if (newContentManifest != oldManifest) {
+                manifestStorage.storeInFolder(newContentManifest, filesStructure.getWwwFolder());
+            }
             appConfigStorage.storeInFolder(newAppConfig, filesStructure.getWwwFolder());
+            validatorsStorage.storeInFolder(responseValidators, filesStructure.getWwwFolder());
             setNothingToUpdateResult(newAppConfig);
 
             return;
         }
 
+        // remember where current content is located: old versions of the files are used to apply delta patches
+        currentWwwFolder = filesStructure.getWwwFolder();
+
         // switch file structure to new release
         filesStructure.switchToRelease(newAppConfig.getContentConfig().getReleaseVersion());
 
-        recreateDownloadFolder(filesStructure.getDownloadFolder());
+        prepareDownloadFolder(filesStructure.getDownloadFolder());
 
         // download files
         boolean isDownloaded = downloadNewAndChangedFiles(newAppConfig, diff);
@@ -123,6 +159,8 @@ class UpdateLoaderWorker implements WorkerTask {
         // store configs
         manifestStorage.storeInFolder(newContentManifest, filesStructure.getDownloadFolder());
         appConfigStorage.storeInFolder(newAppConfig, filesStructure.getDownloadFolder());
+        validatorsStorage.storeInFolder(responseValidators, filesStructure.getDownloadFolder());
+        storeInstallPlan(newAppConfig, diff);
 
         // notify that we are done
         setSuccessResult(newAppConfig);
@@ -138,6 +176,7 @@ class UpdateLoaderWorker implements WorkerTask {
     private boolean init() {
         manifestStorage = new ContentManifestStorage();
         appConfigStorage = new ApplicationConfigStorage();
+        validatorsStorage = new ResponseValidatorsStorage();
 
         // load current application config
         oldAppConfig = appConfigStorage.loadFromFolder(filesStructure.getWwwFolder());
@@ -153,27 +192,46 @@ class UpdateLoaderWorker implements WorkerTask {
             return false;
         }
 
+        // update is built on top of the current release, so all it's layers must be in place
+        currentRelease = LayeredRelease.load(context, currentVersion);
+        if (!currentRelease.isComplete()) {
+            setErrorResult(ChcpError.LOCAL_VERSION_OF_RELEASE_IS_INCOMPLETE, null);
+            return false;
+        }
+
+        // validators of the previous downloads; they are optional
+        responseValidators = validatorsStorage.loadFromFolder(filesStructure.getWwwFolder());
+        if (responseValidators == null) {
+            responseValidators = new ResponseValidators();
+        }
+
         return true;
     }
 
     /**
      * Download application config from server.
+     * If config on the server hasn't changed since the last download - current config is returned.
      *
      * @return new application config
      */
     private ApplicationConfig downloadApplicationConfig() {
-        DownloadResult<ApplicationConfig> downloadResult = new ApplicationConfigDownloader(applicationConfigUrl).download();
+        DownloadResult<ApplicationConfig> downloadResult = new ApplicationConfigDownloader(applicationConfigUrl, responseValidators).download();
         if (downloadResult.error != null) {
             Log.d("CHCP", "Failed to download application config");
 
             return null;
         }
 
+        if (downloadResult.isNotModified) {
+            return oldAppConfig;
+        }
+
         return downloadResult.value;
     }
 
     /**
      * Download new content manifest from server.
+     * If manifest on the server hasn't changed since the last download - current manifest is returned.
      *
      * @param config new application config from which we will take content url
      * @return new content manifest
@@ -186,23 +244,36 @@ class UpdateLoaderWorker implements WorkerTask {
         }
 
         final String url = URLUtility.construct(contentUrl, PluginFilesStructure.MANIFEST_FILE_NAME);
-        DownloadResult<ContentManifest> downloadResult = new ContentManifestDownloader(url).download();
+        DownloadResult<ContentManifest> downloadResult = new ContentManifestDownloader(url, responseValidators).download();
         if (downloadResult.error != null) {
             Log.d("CHCP", "Failed to download content manifest");
             return null;
         }
 
+        if (downloadResult.isNotModified) {
+            return oldManifest;
+        }
+
         return downloadResult.value;
     }
 
     /**
-     * Remove old version of download folder and create a new one.
+     * Prepare download folder for the update.
+     * If folder has a journal of the unfinished download - it is kept, so we could continue from where we stopped.
+     * Otherwise, old version of download folder is removed and a new one is created;
+     * journal of the previous installation attempt is removed too, since it doesn't describe the new files.
      *
      * @param folder absolute path to download folder
      */
-    private void recreateDownloadFolder(final String folder) {
+    private void prepareDownloadFolder(final String folder) {
+        if (DownloadJournal.existsInFolder(folder)) {
+            Log.d("CHCP", "Continuing previous download of the update");
+            return;
+        }
+
         FilesUtility.delete(folder);
         FilesUtility.ensureDirectoryExists(folder);
+        InstallJournal.deleteInFolder(filesStructure.getContentFolder());
     }
 
     /**
@@ -219,23 +290,129 @@ class UpdateLoaderWorker implements WorkerTask {
             return false;
         }
 
-        List<ManifestFile> downloadFiles = diff.getUpdateFiles();
+        final List<ManifestFile> updateFiles = diff.getUpdateFiles();
+        final String downloadFolder = filesStructure.getDownloadFolder();
+
+        final HashAlgorithm hashAlgorithm = newAppConfig.getContentConfig().getHashAlgorithm();
+        final ParallelFileDownloader downloader = new ParallelFileDownloader();
+        downloader.setHashAlgorithm(hashAlgorithm);
+        final String patchesUrl = newAppConfig.getContentConfig().getPatchesUrl();
+        if (!TextUtils.isEmpty(patchesUrl)) {
+            downloader.enableDeltaPatches(patchesUrl, currentRelease, hashesOfChangedFiles(diff));
+        }
 
         boolean isFinishedWithSuccess = true;
+        DownloadJournal journal = null;
         try {
-            FileDownloader.downloadFiles(filesStructure.getDownloadFolder(), contentUrl, downloadFiles);
+            journal = DownloadJournal.openInFolder(downloadFolder, hashAlgorithm);
+            journal.removeFilesNotInList(updateFiles);
+
+            // files, that we already have on the device, are not loaded again
+            List<ManifestFile> downloadFiles = buildLocalContentIndex(hashAlgorithm).reuseLocalFiles(downloadFolder, updateFiles, journal);
+
+            // for large updates try to get everything with a single request
+            final String archiveUrl = newAppConfig.getContentConfig().getArchiveUrl();
+            if (!TextUtils.isEmpty(archiveUrl) && downloadFiles.size() >= MIN_FILES_COUNT_FOR_ARCHIVE) {
+                downloadFiles = new ArchiveDownloader(hashAlgorithm).downloadFiles(downloadFolder, archiveUrl, downloadFiles, journal);
+            }
+
+            downloader.downloadFiles(downloadFolder, contentUrl, downloadFiles, journal);
+
+            // download is finished - journal is not needed anymore;
+            // hashes of the verified files are kept, so installer doesn't need to read the files again
+            journal.delete();
         } catch (IOException e) {
             e.printStackTrace();
             isFinishedWithSuccess = false;
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
         }
 
         return isFinishedWithSuccess;
     }
 
     /**
-     * Remove temporary files
+     * Save installation plan into the download folder, so installer could use the difference,
+     * that we already calculated.
+     *
+     * @param newAppConfig loaded application config
+     * @param diff         difference between current and the new manifests
+     */
+    private void storeInstallPlan(ApplicationConfig newAppConfig, ManifestDiff diff) {
+        final String downloadFolder = filesStructure.getDownloadFolder();
+        final InstallPlan plan = new InstallPlan(oldAppConfig.getContentConfig().getReleaseVersion(),
+                newAppConfig.getContentConfig().getReleaseVersion(), diff);
+        for (ManifestFile file : diff.getUpdateFiles()) {
+            plan.setFileSize(file.name, new File(downloadFolder, file.name).length());
+        }
+
+        new InstallPlanStorage().storeInFolder(plan, downloadFolder);
+    }
+
+    /**
+     * Create index of the content, that is already on the device.
+     * It includes current release and all other releases, that are kept on the disk.
+     *
+     * @param hashAlgorithm algorithm, with which hashes of the new files are calculated
+     * @return index of the local content
+     */
+    private LocalContentIndex buildLocalContentIndex(HashAlgorithm hashAlgorithm) {
+        final LocalContentIndex index = new LocalContentIndex(hashAlgorithm);
+        index.addRelease(currentRelease, oldManifest);
+
+        final File[] releaseFolders = new File(PluginFilesStructure.getPluginRootFolder(context)).listFiles();
+        if (releaseFolders == null) {
+            return index;
+        }
+
+        final String newReleaseFolder = filesStructure.getContentFolder();
+        final String currentReleaseFolder = new File(currentWwwFolder).getParent();
+        for (File releaseFolder : releaseFolders) {
+            final String releasePath = releaseFolder.getAbsolutePath();
+            if (!releaseFolder.isDirectory() || releasePath.equals(newReleaseFolder) || releasePath.equals(currentReleaseFolder)) {
+                continue;
+            }
+
+            final PluginFilesStructure releaseFS = new PluginFilesStructure(context, releaseFolder.getName());
+            final ContentManifest manifest = manifestStorage.loadFromFolder(releaseFS.getWwwFolder());
+            if (manifest != null) {
+                index.addFolder(releaseFS.getWwwFolder(), manifest);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Find hashes of the current versions of the changed files.
+     * Hashes are looked up in the old manifest by name, so it's whole list of files is not read.
+     *
+     * @param diff manifest difference
+     * @return map of the file name to it's current hash
+     */
+    private Map<String, String> hashesOfChangedFiles(ManifestDiff diff) {
+        final Map<String, String> hashes = new HashMap<String, String>();
+        for (ManifestFile file : diff.changedFiles()) {
+            final String oldHash = oldManifest.findHash(file.name);
+            if (oldHash != null) {
+                hashes.put(file.name, oldHash);
+            }
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Remove temporary files.
+     * If download can be continued later on - they are kept.
      */
     private void cleanUp() {
+        if (DownloadJournal.existsInFolder(filesStructure.getDownloadFolder())) {
+            return;
+        }
+
         FilesUtility.delete(filesStructure.getContentFolder());
     }
 
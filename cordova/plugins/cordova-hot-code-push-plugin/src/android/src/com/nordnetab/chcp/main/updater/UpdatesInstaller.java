@@ -5,9 +5,16 @@ import android.util.Log;
 
 import com.nordnetab.chcp.main.events.NothingToInstallEvent;
 import com.nordnetab.chcp.main.model.ChcpError;
+import com.nordnetab.chcp.main.model.LayeredRelease;
 import com.nordnetab.chcp.main.model.PluginFilesStructure;
+import com.nordnetab.chcp.main.utils.CleanUpHelper;
+import com.nordnetab.chcp.main.utils.FilesUtility;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import de.greenrobot.event.EventBus;
 
@@ -15,10 +22,19 @@ import de.greenrobot.event.EventBus;
  * Created by Nikolay Demyankov on 22.07.15.
  * <p/>
  * Utility class to perform update installation.
+ * <p/>
+ * Installation, compaction of the layered releases and removal of the old release folders change the release folders,
+ * and update download reads the current release, so they are executed one after another on the same background thread.
  */
 public class UpdatesInstaller {
 
-    private static boolean isInstalling;
+    private static final int MAX_LAYERS_BEFORE_COMPACTION = 4;
+    private static final String COMPACTION_FOLDER_NAME = "www.compaction";
+
+    private static final ExecutorService releaseFoldersExecutor = Executors.newSingleThreadExecutor();
+
+    private static volatile boolean isInstalling;
+    private static volatile boolean isCompacting;
 
     /**
      * Check if we are currently doing some installation.
@@ -32,16 +48,20 @@ public class UpdatesInstaller {
     /**
      * Request update installation.
      * Installation performed in background. Events are dispatched to notify us about the result.
+     * If release is being compacted - installation starts right after that.
      *
      * @param context        application context
      * @param newVersion     version to install
      * @param currentVersion current content version
+     * @param isParanoid     if <code>true</code> - all update files are hashed again, even if they were verified during the download
+     * @param isLayered      if <code>true</code> - new release stores only the changed files on top of the current release
      * @return <code>ChcpError.NONE</code> if installation started; otherwise - error details
      * @see NothingToInstallEvent
      * @see com.nordnetab.chcp.main.events.UpdateInstallationErrorEvent
      * @see com.nordnetab.chcp.main.events.UpdateInstalledEvent
      */
-    public static ChcpError install(final Context context, final String newVersion, final String currentVersion) {
+    public static synchronized ChcpError install(final Context context, final String newVersion, final String currentVersion,
+                                                 final boolean isParanoid, final boolean isLayered) {
         // if we already installing - exit
         if (isInstalling) {
             return ChcpError.INSTALLATION_ALREADY_IN_PROGRESS;
@@ -52,20 +72,127 @@ public class UpdatesInstaller {
             return ChcpError.CANT_INSTALL_WHILE_DOWNLOAD_IN_PROGRESS;
         }
 
+        // download folder is removed at the end of the installation, but it is not finished until the release becomes current
         final PluginFilesStructure newReleaseFS = new PluginFilesStructure(context, newVersion);
-        if (!new File(newReleaseFS.getDownloadFolder()).exists()) {
+        if (!new File(newReleaseFS.getDownloadFolder()).exists() && !InstallJournal.existsInFolder(newReleaseFS.getContentFolder())) {
             return ChcpError.NOTHING_TO_INSTALL;
         }
 
-        final WorkerTask task = new InstallationWorker(context, newVersion, currentVersion);
+        final WorkerTask task = new InstallationWorker(context, newVersion, currentVersion, isParanoid, isLayered);
         execute(task);
 
         return ChcpError.NONE;
     }
 
+    /**
+     * Finish installation of the release, when it is stored as the current one.
+     * Until then installation journal is kept, and if application is killed before the switch -
+     * installation is completed again on the next launch.
+     *
+     * @param context        application context
+     * @param releaseVersion version of the installed release
+     * @see com.nordnetab.chcp.main.events.UpdateInstalledEvent
+     */
+    public static void commitInstallation(final Context context, final String releaseVersion) {
+        InstallJournal.deleteInFolder(new PluginFilesStructure(context, releaseVersion).getContentFolder());
+    }
+
+    /**
+     * Merge the layers of the release into it's own folder, if it depends on too many other releases.
+     * After that parent releases are not needed by it anymore and can be removed.
+     * <p/>
+     * Compaction is performed in background and is not started while update is loading or installing.
+     * Files of the parent layers are cloned into the temporary folder first, and then each of them is renamed into
+     * the www folder of the release. So every file appears there at once and with the same content, that release
+     * already has through it's layers: content of the release doesn't change while compaction runs.
+     *
+     * @param context        application context
+     * @param releaseVersion version of the release
+     * @see LayeredRelease
+     */
+    public static synchronized void compactRelease(final Context context, final String releaseVersion) {
+        if (isCompacting || isInstalling || UpdatesLoader.isExecuting()) {
+            return;
+        }
+
+        if (LayeredRelease.load(context, releaseVersion).getLayersCount() <= MAX_LAYERS_BEFORE_COMPACTION) {
+            return;
+        }
+
+        isCompacting = true;
+        releaseFoldersExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    compact(context, releaseVersion);
+                } finally {
+                    isCompacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove folders of the releases, that are not used anymore.
+     * Performed in background, when installation and compaction are not running.
+     *
+     * @param context          application context
+     * @param excludedReleases which releases are leave alive
+     * @see CleanUpHelper
+     */
+    public static void removeReleaseFolders(final Context context, final String[] excludedReleases) {
+        releaseFoldersExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                CleanUpHelper.removeReleaseFolders(context, excludedReleases);
+            }
+        });
+    }
+
+    // region Private API
+
+    private static void compact(final Context context, final String releaseVersion) {
+        // release might have been compacted by the previous request
+        final LayeredRelease release = LayeredRelease.load(context, releaseVersion);
+        if (!release.isLayered()) {
+            return;
+        }
+
+        // files of the missing parent can't be restored: release stays broken until it's replaced
+        if (!release.isComplete()) {
+            Log.d("CHCP", "Can't compact the release " + releaseVersion + ": some of it's layers are missing");
+            return;
+        }
+
+        final PluginFilesStructure releaseFS = new PluginFilesStructure(context, releaseVersion);
+        final File compactionFolder = new File(releaseFS.getContentFolder(), COMPACTION_FOLDER_NAME);
+        FilesUtility.delete(compactionFolder);
+        try {
+            Log.d("CHCP", "Compacting " + release.getLayersCount() + " layers of the release " + releaseVersion);
+            new ReleaseFolderCloner(new HashSet<String>()).cloneParentLayers(release, compactionFolder);
+            FilesUtility.move(compactionFolder, new File(releaseFS.getWwwFolder()));
+            LayeredRelease.removeLayer(releaseFS);
+        } catch (IOException e) {
+            // release is still valid: it's layers are not changed, and moved files are the same, as in the layers
+            Log.d("CHCP", "Failed to compact the release " + releaseVersion + ": " + e.getMessage());
+        } finally {
+            FilesUtility.delete(compactionFolder);
+        }
+    }
+
+    /**
+     * Execute task on the background thread, that works with the release folders.
+     * Task starts only after all previously scheduled installations, compactions and clean ups are finished.
+     *
+     * @param task task to execute
+     */
+    static void executeOnReleaseFoldersThread(final Runnable task) {
+        releaseFoldersExecutor.execute(task);
+    }
+
     private static void execute(final WorkerTask task) {
         isInstalling = true;
-        new Thread(new Runnable() {
+        releaseFoldersExecutor.execute(new Runnable() {
             @Override
             public void run() {
                 task.run();
@@ -74,6 +201,8 @@ public class UpdatesInstaller {
                 // dispatch resulting event
                 EventBus.getDefault().post(task.result());
             }
-        }).start();
+        });
     }
-}
\ No newline at end of file
+
+    // endregion
+}
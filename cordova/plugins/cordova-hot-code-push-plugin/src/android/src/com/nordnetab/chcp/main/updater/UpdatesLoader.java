@@ -12,10 +12,12 @@ import de.greenrobot.event.EventBus;
  * Utility class to perform update download.
  * It only schedules the download and executes it as soon as possible.
  * <p/>
+ * Download is executed on the same thread, as installation and other changes of the release folders,
+ * so the current release is never compacted or removed while update is loaded on top of it.
  */
 public class UpdatesLoader {
 
-    private static boolean isExecuting;
+    private static volatile boolean isExecuting;
 
     /**
      * Check if download currently in progress
@@ -35,7 +37,7 @@ public class UpdatesLoader {
      * @param currentVersion current version of the content
      * @return <code>ChcpError.NONE</code> if download has started; otherwise - error details
      */
-    public static ChcpError downloadUpdate(final Context context, final String configURL, final String currentVersion) {
+    public static synchronized ChcpError downloadUpdate(final Context context, final String configURL, final String currentVersion) {
         // if download already in progress - exit
         if (isExecuting) {
             return ChcpError.DOWNLOAD_ALREADY_IN_PROGRESS;
@@ -55,7 +57,7 @@ public class UpdatesLoader {
     }
 
     private static void executeTask(final WorkerTask task) {
-        new Thread(new Runnable() {
+        UpdatesInstaller.executeOnReleaseFoldersThread(new Runnable() {
             @Override
             public void run() {
                 task.run();
@@ -63,6 +65,6 @@ public class UpdatesLoader {
 
                 EventBus.getDefault().post(task.result());
             }
-        }).start();
+        });
     }
 }
\ No newline at end of file
@@ -1,10 +1,14 @@
 package com.nordnetab.chcp.main.utils;
 
+import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
 
 import com.nordnetab.chcp.main.events.AssetsInstallationErrorEvent;
 import com.nordnetab.chcp.main.events.AssetsInstalledEvent;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -61,38 +65,95 @@ public class AssetsHelper {
     private static void copyAssetDirectory(AssetManager assetManager, String fromDirectory, String toDirectory) throws IOException {
         // recreate cache folder
         FilesUtility.delete(toDirectory);
+
+        // walk through the assets once, and then copy files concurrently
+        final ParallelFilesCopier copier = new ParallelFilesCopier();
+        collectAssetFiles(assetManager, fromDirectory, toDirectory, copier);
+        copier.execute();
+    }
+
+    private static void collectAssetFiles(AssetManager assetManager, String fromDirectory, String toDirectory,
+                                          ParallelFilesCopier copier) throws IOException {
         FilesUtility.ensureDirectoryExists(toDirectory);
 
-        // copy files
         String[] files = assetManager.list(fromDirectory);
         for (String file : files) {
-            final String destinationFileAbsolutePath = com.nordnetab.chcp.main.utils.Paths.get(toDirectory, file);
+            final String destinationFileAbsolutePath = Paths.get(toDirectory, file);
             final String assetFileAbsolutePath = Paths.get(fromDirectory, file).substring(1);
 
             String subFiles[] = assetManager.list(assetFileAbsolutePath);
             if (subFiles.length == 0) {
-                copyAssetFile(assetManager, assetFileAbsolutePath, destinationFileAbsolutePath);
+                copier.add(new AssetCopyTask(assetManager, assetFileAbsolutePath, destinationFileAbsolutePath));
             } else {
-                copyAssetDirectory(assetManager, assetFileAbsolutePath, destinationFileAbsolutePath);
+                collectAssetFiles(assetManager, assetFileAbsolutePath, destinationFileAbsolutePath, copier);
             }
         }
     }
 
     /**
-     * Copies asset file to destination path
+     * Copies asset file to destination path.
+     * Uncompressed assets are transferred directly from the apk file through the file channel.
+     * Compressed assets can't be opened as file descriptors, so they are unpacked through the stream.
      */
-    private static void copyAssetFile(AssetManager assetManager, String assetFilePath, String destinationFilePath) throws IOException {
-        InputStream in = assetManager.open(assetFilePath);
-        OutputStream out = new FileOutputStream(destinationFilePath);
-
-        // Transfer bytes from in to out
-        byte[] buf = new byte[8192];
-        int len;
-        while ((len = in.read(buf)) > 0) {
-            out.write(buf, 0, len);
+    private static class AssetCopyTask extends ParallelFilesCopier.CopyTask {
+
+        private final AssetManager assetManager;
+        private final String assetFilePath;
+        private final File destinationFile;
+
+        AssetCopyTask(AssetManager assetManager, String assetFilePath, String destinationFilePath) {
+            super(new File(destinationFilePath));
+            this.assetManager = assetManager;
+            this.assetFilePath = assetFilePath;
+            this.destinationFile = new File(destinationFilePath);
         }
 
-        in.close();
-        out.close();
+        @Override
+        protected long copy() throws IOException {
+            final AssetFileDescriptor fd;
+            try {
+                fd = assetManager.openFd(assetFilePath);
+            } catch (FileNotFoundException e) {
+                return copyFromStream();
+            }
+
+            try {
+                final long length = fd.getLength();
+                if (length < 0) {
+                    return copyFromStream();
+                }
+
+                final FileInputStream in = fd.createInputStream();
+                try {
+                    return FilesUtility.transferToFile(in.getChannel(), fd.getStartOffset(), length, destinationFile);
+                } finally {
+                    in.close();
+                }
+            } finally {
+                fd.close();
+            }
+        }
+
+        private long copyFromStream() throws IOException {
+            final InputStream in = assetManager.open(assetFilePath);
+            try {
+                final OutputStream out = new FileOutputStream(destinationFile);
+                try {
+                    long bytesCopied = 0;
+                    byte[] buf = new byte[8192];
+                    int len;
+                    while ((len = in.read(buf)) > 0) {
+                        out.write(buf, 0, len);
+                        bytesCopied += len;
+                    }
+
+                    return bytesCopied;
+                } finally {
+                    out.close();
+                }
+            } finally {
+                in.close();
+            }
+        }
     }
-}
\ No newline at end of file
+}
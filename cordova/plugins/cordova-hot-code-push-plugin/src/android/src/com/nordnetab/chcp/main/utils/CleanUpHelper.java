@@ -4,9 +4,13 @@ import android.content.Context;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.nordnetab.chcp.main.model.LayeredRelease;
 import com.nordnetab.chcp.main.model.PluginFilesStructure;
+import com.nordnetab.chcp.main.network.DownloadJournal;
 
 import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Created by Nikolay Demyankov on 29.12.15.
@@ -15,40 +19,31 @@ import java.io.File;
  */
 public class CleanUpHelper {
 
-    private static boolean isExecuting;
-
+    private final Context context;
     private final File rootFolder;
 
     /**
      * Constructor.
      *
-     * @param rootFolder root folder, where releases are stored
+     * @param context application context
      */
-    private CleanUpHelper(final String rootFolder) {
-        this.rootFolder = new File(rootFolder);
+    private CleanUpHelper(final Context context) {
+        this.context = context;
+        this.rootFolder = new File(PluginFilesStructure.getPluginRootFolder(context));
     }
 
     /**
      * Remove release folders.
+     * Folders are removed on the calling thread, so it should not be the main one.
+     *
+     * Releases, on which layers of the excluded releases are based, are kept too.
      *
      * @param context          application context
      * @param excludedReleases which releases are leave alive.
+     * @see com.nordnetab.chcp.main.updater.UpdatesInstaller#removeReleaseFolders(Context, String[])
      */
     public static void removeReleaseFolders(final Context context, final String[] excludedReleases) {
-        if (isExecuting) {
-            return;
-        }
-        isExecuting = true;
-
-        final String rootFolder = PluginFilesStructure.getPluginRootFolder(context);
-
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                new CleanUpHelper(rootFolder).removeFolders(excludedReleases);
-                isExecuting = false;
-            }
-        }).start();
+        new CleanUpHelper(context).removeFolders(excludedReleases);
     }
 
     private void removeFolders(final String[] excludedReleases) {
@@ -56,25 +51,52 @@ public class CleanUpHelper {
             return;
         }
 
-        File[] files = rootFolder.listFiles();
-        for (File file : files) {
-            boolean isIgnored = false;
-            for (String excludedReleaseName : excludedReleases) {
-                if (TextUtils.isEmpty(excludedReleaseName)) {
-                    continue;
-                }
+        // layered releases need their parents
+        final Set<String> keptReleases = new HashSet<String>();
+        for (String excludedReleaseName : excludedReleases) {
+            if (!TextUtils.isEmpty(excludedReleaseName)) {
+                keptReleases.addAll(LayeredRelease.load(context, excludedReleaseName).getVersions());
+            }
+        }
 
-                if (file.getName().equals(excludedReleaseName)) {
-                    isIgnored = true;
-                    break;
-                }
+        final File[] files = rootFolder.listFiles();
+        final File resumableRelease = findLatestUnfinishedDownload(files);
+        for (File file : files) {
+            // keep the latest unfinished download, so it could be continued
+            if (file.equals(resumableRelease)) {
+                continue;
             }
 
-            if (!isIgnored) {
+            if (!keptReleases.contains(file.getName())) {
                 Log.d("CHCP", "Deleting old release folder: " + file.getName());
                 FilesUtility.delete(file);
             }
         }
     }
 
+    /**
+     * Find release folder with the most recent unfinished download.
+     *
+     * @param releaseFolders list of release folders
+     * @return release folder with unfinished download; <code>null</code> - if there is none
+     */
+    private File findLatestUnfinishedDownload(final File[] releaseFolders) {
+        File latestRelease = null;
+        long latestModificationTime = 0;
+        for (File releaseFolder : releaseFolders) {
+            final String downloadFolder = new PluginFilesStructure(context, releaseFolder.getName()).getDownloadFolder();
+            if (!DownloadJournal.existsInFolder(downloadFolder)) {
+                continue;
+            }
+
+            final long modificationTime = new File(downloadFolder, PluginFilesStructure.DOWNLOAD_JOURNAL_FILE_NAME).lastModified();
+            if (latestRelease == null || modificationTime > latestModificationTime) {
+                latestRelease = releaseFolder;
+                latestModificationTime = modificationTime;
+            }
+        }
+
+        return latestRelease;
+    }
+
 }
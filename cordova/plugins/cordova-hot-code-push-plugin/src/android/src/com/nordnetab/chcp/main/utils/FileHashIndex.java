@@ -0,0 +1,234 @@
+package com.nordnetab.chcp.main.utils;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent cache of the file hashes in the folder.
+ * For each file it remembers size, modification time and hash. When hash of the file is requested again,
+ * and size and modification time are still the same - cached hash is returned without reading the file.
+ * If they differ - entry is dropped, and the file is hashed again.
+ * <p/>
+ * Index is an append-only text file, each line of which has the format:
+ * <code>size modification_time algorithm hash file_name</code>. Later lines override the earlier ones.
+ * If application is killed while writing the line - it is ignored on the next load, and the file is rewritten without it.
+ * When file has too many outdated lines - it is rewritten through the temporary file, which then replaces the original.
+ *
+ * @see HashAlgorithm
+ */
+public class FileHashIndex {
+
+    private static final int MIN_LINES_FOR_COMPACTION = 64;
+
+    private final File folder;
+    private final File indexFile;
+    private final Map<String, Entry> entries;
+    private int linesCount;
+    private int hits;
+    private int misses;
+    private OutputStream output;
+
+    /**
+     * Open index, that is stored in the given folder.
+     * If index file is missing or can't be read - empty index is created.
+     *
+     * @param folder        folder, which files are indexed
+     * @param indexFileName name of the index file inside the folder
+     * @return file hash index
+     */
+    public static FileHashIndex openInFolder(final String folder, final String indexFileName) {
+        final FileHashIndex index = new FileHashIndex(new File(folder), indexFileName);
+
+        // damaged lines are dropped, so new lines are not appended to the broken one
+        if (!index.load()) {
+            index.compact();
+        }
+
+        return index;
+    }
+
+    private FileHashIndex(final File folder, final String indexFileName) {
+        this.folder = folder;
+        this.indexFile = new File(folder, indexFileName);
+        this.entries = new HashMap<String, Entry>();
+    }
+
+    /**
+     * Get cached hash of the file.
+     *
+     * @param fileName  relative path to the file inside the folder
+     * @param algorithm hash algorithm
+     * @return cached hash; <code>null</code> - if file is not in the index, or it was changed since it was hashed
+     */
+    public synchronized String getHash(final String fileName, final HashAlgorithm algorithm) {
+        final Entry entry = entries.get(fileName);
+        if (entry == null || entry.algorithm != algorithm) {
+            misses++;
+            return null;
+        }
+
+        final File file = new File(folder, fileName);
+        if (file.length() != entry.length || file.lastModified() != entry.lastModified) {
+            entries.remove(fileName);
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.hash;
+    }
+
+    /**
+     * Remember hash of the file, that was just written into the folder.
+     * Size and modification time are taken from the file on the disk.
+     *
+     * @param fileName  relative path to the file inside the folder
+     * @param algorithm hash algorithm
+     * @param hash      hash of the file
+     */
+    public void put(final String fileName, final HashAlgorithm algorithm, final String hash) {
+        final File file = new File(folder, fileName);
+        if (file.isFile()) {
+            put(fileName, file.length(), file.lastModified(), algorithm, hash);
+        }
+    }
+
+    /**
+     * Close the index.
+     * If it has too many outdated lines - it is compacted.
+     */
+    public synchronized void close() {
+        closeOutput();
+
+        if (linesCount >= MIN_LINES_FOR_COMPACTION && linesCount > entries.size() * 2) {
+            compact();
+        }
+
+        if (hits + misses > 0) {
+            Log.d("CHCP", "File hash index of " + folder.getAbsolutePath() + ": " + hits + " hits, " + misses + " misses");
+        }
+    }
+
+    // region Private API
+
+    private synchronized void put(final String fileName, final long length, final long lastModified,
+                                  final HashAlgorithm algorithm, final String hash) {
+        final Entry entry = new Entry(length, lastModified, algorithm, hash);
+        entries.put(fileName, entry);
+
+        try {
+            if (output == null) {
+                output = new FileOutputStream(indexFile, true);
+            }
+            output.write(toLine(fileName, entry).getBytes("UTF-8"));
+            output.flush();
+            linesCount++;
+        } catch (IOException e) {
+            // index is only a cache: without it files are hashed again
+            e.printStackTrace();
+            closeOutput();
+        }
+    }
+
+    private boolean load() {
+        if (!indexFile.exists()) {
+            return true;
+        }
+
+        boolean isValid = true;
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    linesCount++;
+                    final String[] parts = line.split(" ", 5);
+                    final HashAlgorithm algorithm = parts.length == 5 ? HashAlgorithm.fromString(parts[2]) : null;
+                    if (algorithm == null) {
+                        isValid = false;
+                        continue;
+                    }
+
+                    try {
+                        entries.put(parts[4], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), algorithm, parts[3]));
+                    } catch (NumberFormatException e) {
+                        // line was not fully written
+                        isValid = false;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            entries.clear();
+            isValid = false;
+        }
+
+        return isValid;
+    }
+
+    private void compact() {
+        final File tmpFile = new File(indexFile.getAbsolutePath() + ".tmp");
+        try {
+            final OutputStream tmpOutput = new FileOutputStream(tmpFile);
+            try {
+                for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    tmpOutput.write(toLine(entry.getKey(), entry.getValue()).getBytes("UTF-8"));
+                }
+            } finally {
+                tmpOutput.close();
+            }
+
+            if (!tmpFile.renameTo(indexFile)) {
+                throw new IOException("Failed to replace file hash index");
+            }
+            linesCount = entries.size();
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmpFile.delete();
+        }
+    }
+
+    private void closeOutput() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        output = null;
+    }
+
+    private static String toLine(final String fileName, final Entry entry) {
+        return entry.length + " " + entry.lastModified + " " + entry.algorithm + " " + entry.hash + " " + fileName + "\n";
+    }
+
+    // endregion
+
+    private static class Entry {
+        final long length;
+        final long lastModified;
+        final HashAlgorithm algorithm;
+        final String hash;
+
+        Entry(long length, long lastModified, HashAlgorithm algorithm, String hash) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.algorithm = algorithm;
+            this.hash = hash;
+        }
+    }
+}
@@ -1,17 +1,18 @@
 package com.nordnetab.chcp.main.utils;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 
 /**
  * Created by Nikolay Demyankov on 21.07.15.
@@ -92,40 +93,174 @@ public class FilesUtility {
     /**
      * Copy file object from one place to another.
      * Can be used to copy file to file, or folder to folder.
+     * Folder tree is walked once, and then files are copied concurrently.
+     * If copy fails - files, that were already copied, are removed.
      *
      * @param src source file
      * @param dst destination file
      * @throws IOException
+     * @see ParallelFilesCopier
      */
     public static void copy(File src, File dst) throws IOException {
+        if (!src.isDirectory()) {
+            copyFile(src, dst);
+            return;
+        }
+
+        final ParallelFilesCopier copier = new ParallelFilesCopier();
+        collectFilesToCopy(src, dst, copier);
+        copier.execute();
+    }
+
+    private static void collectFilesToCopy(File src, File dst, ParallelFilesCopier copier) throws IOException {
+        ensureDirectoryExists(dst);
+
+        String[] filesList = src.list();
+        if (filesList == null) {
+            throw new IOException("Failed to list folder " + src.getAbsolutePath());
+        }
+
+        for (String file : filesList) {
+            File srcFile = new File(src, file);
+            File destFile = new File(dst, file);
+            if (srcFile.isDirectory()) {
+                collectFilesToCopy(srcFile, destFile, copier);
+            } else {
+                copier.addFile(srcFile, destFile);
+            }
+        }
+    }
+
+    /**
+     * Move file object from one place to another.
+     * Can be used to move file to file, or folder to folder. If destination folder already exists - content is merged into it,
+     * and existing files are replaced.
+     * Within the same file system objects are renamed, so data is not written again;
+     * between different file systems they are copied, and the source is deleted.
+     *
+     * @param src source file
+     * @param dst destination file
+     * @return number of the files, that were copied instead of rename
+     * @throws IOException if failed to copy the file, to list the folder or to remove the source
+     */
+    public static int move(File src, File dst) throws IOException {
         if (src.isDirectory()) {
-            ensureDirectoryExists(dst);
+            // whole folder can be moved at once
+            if (!dst.exists()) {
+                ensureDirectoryExists(dst.getParentFile());
+                if (src.renameTo(dst)) {
+                    return 0;
+                }
+            }
 
+            ensureDirectoryExists(dst);
+            int copiedFilesCount = 0;
             String[] filesList = src.list();
+            if (filesList == null) {
+                throw new IOException("Failed to list files of the folder " + src.getAbsolutePath());
+            }
+
             for (String file : filesList) {
-                File srcFile = new File(src, file);
-                File destFile = new File(dst, file);
+                copiedFilesCount += move(new File(src, file), new File(dst, file));
+            }
+            if (!src.delete()) {
+                throw new IOException("Failed to remove moved folder " + src.getAbsolutePath());
+            }
+
+            return copiedFilesCount;
+        }
 
-                copy(srcFile, destFile);
+        ensureDirectoryExists(dst.getParentFile());
+        if (src.renameTo(dst)) {
+            return 0;
+        }
+
+        // rename doesn't work between file systems
+        copyFile(src, dst);
+        if (!src.delete()) {
+            throw new IOException("Failed to remove copied file " + src.getAbsolutePath());
+        }
+
+        return 1;
+    }
+
+    /**
+     * Copy single file.
+     * Data is transferred between the file channels, so kernel can copy it without passing through the java heap.
+     *
+     * @param fromFile source file
+     * @param toFile   destination file
+     * @return number of the copied bytes
+     * @throws IOException if failed to copy the file
+     */
+    static long copyFile(File fromFile, File toFile) throws IOException {
+        // destination might be a hard link: write a new file instead of changing the shared data
+        if (toFile.exists()) {
+            toFile.delete();
+        }
+
+        final FileInputStream in = new FileInputStream(fromFile);
+        try {
+            final FileChannel source = in.getChannel();
+            return transferToFile(source, 0, source.size(), toFile);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write part of the channel into the file.
+     * Size of the file is set before the transfer, so file system can allocate the space at once.
+     *
+     * @param source   source channel
+     * @param position position in the source, from which data is taken
+     * @param length   number of bytes to transfer
+     * @param toFile   destination file
+     * @return number of the copied bytes
+     * @throws IOException if failed to copy the data, or source has less data than expected
+     */
+    static long transferToFile(FileChannel source, long position, long length, File toFile) throws IOException {
+        final RandomAccessFile out = new RandomAccessFile(toFile, "rw");
+        try {
+            out.setLength(length);
+            final FileChannel destination = out.getChannel();
+            long transferred = 0;
+            while (transferred < length) {
+                final long count = source.transferTo(position + transferred, length - transferred, destination);
+                if (count <= 0) {
+                    throw new IOException("Unexpected end of data while copying into " + toFile.getAbsolutePath());
+                }
+                transferred += count;
             }
-        } else {
-            copyFile(src, dst);
+
+            return transferred;
+        } finally {
+            out.close();
         }
     }
 
-    private static void copyFile(File fromFile, File toFile) throws IOException {
-        InputStream in = new BufferedInputStream(new FileInputStream(fromFile));
-        OutputStream out = new BufferedOutputStream(new FileOutputStream(toFile));
+    /**
+     * Create hard link to the file.
+     * Link shares the data with the original file, so it takes no additional space on the disk.
+     * Because of that linked file should never be modified in place: only replaced with another file.
+     * Supported starting from Android 5.0.
+     *
+     * @param src  existing file
+     * @param dst  path of the link; should not exist
+     * @return <code>true</code> if link is created; <code>false</code> - if links are not supported
+     */
+    public static boolean createHardLink(File src, File dst) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return false;
+        }
 
-        // Transfer bytes from in to out
-        byte[] buf = new byte[8192];
-        int len;
-        while ((len = in.read(buf)) > 0) {
-            out.write(buf, 0, len);
+        try {
+            Os.link(src.getAbsolutePath(), dst.getAbsolutePath());
+        } catch (ErrnoException e) {
+            return false;
         }
 
-        in.close();
-        out.close();
+        return true;
     }
 
     /**
@@ -207,15 +342,27 @@ public class FilesUtility {
      * @see MD5
      */
     public static String calculateFileHash(File file) throws Exception {
-        MD5 md5 = new MD5();
-        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        return Hex.encode(calculateFileDigest(file, HashAlgorithm.MD5));
+    }
 
-        int len;
-        byte[] buff = new byte[8192];
-        while ((len = in.read(buff)) > 0) {
-            md5.write(buff, len);
+    /**
+     * Calculate hash of the file with the given algorithm.
+     *
+     * @param file      file whose hash we need
+     * @param algorithm hash algorithm
+     * @return calculated hash bytes
+     * @throws IOException if failed to read the file
+     * @see Hasher
+     */
+    public static byte[] calculateFileDigest(File file, HashAlgorithm algorithm) throws IOException {
+        Hasher hasher = algorithm.newHasher();
+        try {
+            hasher.writeFile(file);
+        } catch (IOException e) {
+            hasher.release();
+            throw e;
         }
 
-        return md5.calculateHash();
+        return hasher.calculateDigest();
     }
 }
\ No newline at end of file
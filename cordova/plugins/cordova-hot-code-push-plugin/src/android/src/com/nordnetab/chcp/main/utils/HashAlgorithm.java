@@ -0,0 +1,109 @@
+package com.nordnetab.chcp.main.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+
+/**
+ * Enum holds list of algorithms, that can be used to calculate hashes of the content files.
+ * <p/>
+ * Digest instances are expensive to create, so they are pooled per thread and reused.
+ *
+ * @see Hasher
+ */
+public enum HashAlgorithm {
+    /**
+     * MD5 hash. Used by default.
+     */
+    MD5("md5", "MD5"),
+
+    /**
+     * SHA-256 hash.
+     */
+    SHA256("sha256", "SHA-256"),
+
+    /**
+     * xxHash64 hash. It is not cryptographic, but a lot faster than the others.
+     */
+    XXHASH64("xxhash64", null);
+
+    private final String value;
+    private final String digestName;
+    private final ThreadLocal<ArrayDeque<MessageDigest>> pool;
+
+    HashAlgorithm(String value, String digestName) {
+        this.value = value;
+        this.digestName = digestName;
+        this.pool = new ThreadLocal<ArrayDeque<MessageDigest>>() {
+            @Override
+            protected ArrayDeque<MessageDigest> initialValue() {
+                return new ArrayDeque<MessageDigest>();
+            }
+        };
+    }
+
+    /**
+     * Convert string value to enum instance.
+     *
+     * @param value string value
+     * @return enum value; <code>null</code> - if algorithm is not supported
+     */
+    public static HashAlgorithm fromString(String value) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.value.equalsIgnoreCase(value)) {
+                return algorithm;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Create hasher for this algorithm.
+     *
+     * @return hasher
+     */
+    public Hasher newHasher() {
+        return new Hasher(this);
+    }
+
+    /**
+     * Take digest from the pool of the current thread.
+     * When it is no longer needed - it should be returned with {@link #recycleDigest(MessageDigest)}.
+     *
+     * @return digest; <code>null</code> - if algorithm is not available
+     */
+    MessageDigest obtainDigest() {
+        final MessageDigest digest = pool.get().poll();
+        if (digest != null) {
+            return digest;
+        }
+
+        if (digestName == null) {
+            return new XxHash64Digest();
+        }
+
+        try {
+            return MessageDigest.getInstance(digestName);
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+
+        return null;
+    }
+
+    /**
+     * Return digest to the pool of the current thread.
+     *
+     * @param digest digest to return; it is reset before being reused
+     */
+    void recycleDigest(MessageDigest digest) {
+        digest.reset();
+        pool.get().push(digest);
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
@@ -0,0 +1,192 @@
+package com.nordnetab.chcp.main.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+/**
+ * Utility class to calculate hash of the data.
+ * Data is written in parts, and after that the hash is calculated. Hasher can't be reused after that.
+ * <p/>
+ * Files are hashed through the file channel without copying their content into the heap:
+ * small files are read into the direct buffer, large files are mapped into the memory region by region.
+ *
+ * @see HashAlgorithm
+ */
+public class Hasher {
+
+    private static final long MAPPING_THRESHOLD = 1024 * 1024;
+    private static final long MAPPED_REGION_SIZE = 16 * 1024 * 1024;
+    private static final int DIRECT_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> directBuffer = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+    };
+
+    private final HashAlgorithm algorithm;
+    private MessageDigest digest;
+
+    /**
+     * Class constructor.
+     *
+     * @param algorithm hash algorithm
+     */
+    public Hasher(HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+        this.digest = algorithm.obtainDigest();
+    }
+
+    /**
+     * Write bytes, based on which we will calculate hash later on.
+     *
+     * @param bytes  bytes
+     * @param length number of bytes to take
+     */
+    public void write(byte[] bytes, int length) {
+        if (digest == null) {
+            return;
+        }
+
+        digest.update(bytes, 0, length);
+    }
+
+    /**
+     * Write remaining bytes of the buffer, based on which we will calculate hash later on.
+     * After the call buffer has no remaining bytes.
+     *
+     * @param buffer buffer with the data
+     */
+    public void write(ByteBuffer buffer) {
+        if (digest == null) {
+            buffer.position(buffer.limit());
+            return;
+        }
+
+        digest.update(buffer);
+    }
+
+    /**
+     * Write content of the file, based on which we will calculate hash later on.
+     * Files, that are larger than 1 MB, are mapped into the memory; smaller files are read into the direct buffer.
+     * Can be interrupted through {@link Thread#interrupt()}.
+     *
+     * @param file file to read
+     * @return number of the written bytes
+     * @throws IOException if failed to read the file
+     */
+    public long writeFile(File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final FileChannel channel = in.getChannel();
+            final long size = channel.size();
+            long position = 0;
+            if (size >= MAPPING_THRESHOLD) {
+                position = writeMapped(channel, size);
+            }
+
+            // small file, or the rest of the large file, that failed to map
+            return position + writeThroughBuffer(channel, position);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Calculate hash based on the received bytes.
+     *
+     * @return hash bytes; empty array - if algorithm is not available
+     */
+    public byte[] calculateDigest() {
+        if (digest == null) {
+            return new byte[0];
+        }
+
+        final byte[] result = digest.digest();
+        algorithm.recycleDigest(digest);
+        digest = null;
+
+        return result;
+    }
+
+    /**
+     * Return digest to the pool without calculating the hash.
+     * Should be called, when hashing is aborted; does nothing, if hash is already calculated.
+     */
+    public void release() {
+        if (digest == null) {
+            return;
+        }
+
+        algorithm.recycleDigest(digest);
+        digest = null;
+    }
+
+    /**
+     * Calculate hash based on the received bytes.
+     *
+     * @return hash hex string
+     */
+    public String calculateHash() {
+        return Hex.encode(calculateDigest());
+    }
+
+    /**
+     * Calculate hash and compare it with the expected one.
+     *
+     * @param expectedHash expected hash hex string
+     * @return <code>true</code> if hashes are equal; <code>false</code> - otherwise
+     */
+    public boolean matches(String expectedHash) {
+        return Hex.matches(calculateDigest(), expectedHash);
+    }
+
+    // region Private API
+
+    private long writeMapped(final FileChannel channel, final long size) throws IOException {
+        long position = 0;
+        while (position < size) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Hashing is interrupted");
+            }
+
+            final long regionSize = Math.min(MAPPED_REGION_SIZE, size - position);
+            final ByteBuffer region;
+            try {
+                region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize);
+            } catch (IOException e) {
+                // address space is exhausted - read the rest of the file
+                e.printStackTrace();
+                break;
+            }
+
+            write(region);
+            position += regionSize;
+        }
+
+        return position;
+    }
+
+    private long writeThroughBuffer(final FileChannel channel, long position) throws IOException {
+        final ByteBuffer buffer = directBuffer.get();
+        long bytesCount = 0;
+        channel.position(position);
+        buffer.clear();
+        while (channel.read(buffer) != -1) {
+            buffer.flip();
+            bytesCount += buffer.remaining();
+            write(buffer);
+            buffer.clear();
+        }
+
+        return bytesCount;
+    }
+
+    // endregion
+}
@@ -0,0 +1,159 @@
+package com.nordnetab.chcp.main.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Utility class to convert digests to hex strings and back.
+ * Conversion is done through the lookup tables.
+ * <p/>
+ * Hex strings are always in lower case: that is how hashes are stored in the content manifest.
+ */
+public class Hex {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; i++) {
+            VALUES[i] = -1;
+        }
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+        }
+    }
+
+    /**
+     * Convert bytes into hex string.
+     *
+     * @param bytes bytes to convert
+     * @return hex string
+     */
+    public static String encode(byte[] bytes) {
+        return encode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Convert part of the array into hex string.
+     *
+     * @param bytes  array with the data
+     * @param offset where bytes start
+     * @param length number of bytes to convert
+     * @return hex string
+     */
+    public static String encode(byte[] bytes, int offset, int length) {
+        final char[] chars = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            final int value = bytes[offset + i] & 0xFF;
+            chars[i * 2] = DIGITS[value >>> 4];
+            chars[i * 2 + 1] = DIGITS[value & 0x0F];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Convert part of the buffer into hex string.
+     * Position of the buffer is not changed.
+     *
+     * @param buffer buffer with the data
+     * @param offset where bytes start
+     * @param length number of bytes to convert
+     * @return hex string
+     */
+    public static String encode(ByteBuffer buffer, int offset, int length) {
+        final char[] chars = new char[length * 2];
+        for (int i = 0; i < length; i++) {
+            final int value = buffer.get(offset + i) & 0xFF;
+            chars[i * 2] = DIGITS[value >>> 4];
+            chars[i * 2 + 1] = DIGITS[value & 0x0F];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Convert hex string into bytes.
+     *
+     * @param hex lower case hex string
+     * @return bytes; <code>null</code> - if string is not a lower case hex string
+     */
+    public static byte[] decode(String hex) {
+        if (hex == null || hex.length() % 2 != 0) {
+            return null;
+        }
+
+        final byte[] bytes = new byte[hex.length() / 2];
+        return decode(hex, bytes, 0) ? bytes : null;
+    }
+
+    /**
+     * Convert hex string into bytes, writing them into the given array.
+     *
+     * @param hex    lower case hex string
+     * @param output where to write the bytes; should have room for <code>hex.length() / 2</code> bytes
+     * @param offset from which position of the array to write
+     * @return <code>true</code> if string is converted; <code>false</code> - if it is not a lower case hex string
+     */
+    public static boolean decode(String hex, byte[] output, int offset) {
+        if (hex.length() % 2 != 0) {
+            return false;
+        }
+
+        for (int i = 0, count = hex.length() / 2; i < count; i++) {
+            final int high = valueOf(hex.charAt(i * 2));
+            final int low = valueOf(hex.charAt(i * 2 + 1));
+            if (high < 0 || low < 0) {
+                return false;
+            }
+            output[offset + i] = (byte) ((high << 4) | low);
+        }
+
+        return true;
+    }
+
+    /**
+     * Check if string is a lower case hex string.
+     *
+     * @param value string to check
+     * @return <code>true</code> if it is a hex string; <code>false</code> - otherwise
+     */
+    public static boolean isHex(String value) {
+        if (value == null || value.length() % 2 != 0) {
+            return false;
+        }
+
+        for (int i = 0, length = value.length(); i < length; i++) {
+            if (valueOf(value.charAt(i)) < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compare digest with the hex string without converting the digest into string.
+     *
+     * @param digest digest bytes
+     * @param hex    lower case hex string
+     * @return <code>true</code> if hex string represents the digest; <code>false</code> - otherwise
+     */
+    public static boolean matches(byte[] digest, String hex) {
+        if (digest == null || hex == null || hex.length() != digest.length * 2) {
+            return false;
+        }
+
+        for (int i = 0; i < digest.length; i++) {
+            final int value = digest[i] & 0xFF;
+            if (hex.charAt(i * 2) != DIGITS[value >>> 4] || hex.charAt(i * 2 + 1) != DIGITS[value & 0x0F]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int valueOf(final char c) {
+        return c < VALUES.length ? VALUES[c] : -1;
+    }
+}
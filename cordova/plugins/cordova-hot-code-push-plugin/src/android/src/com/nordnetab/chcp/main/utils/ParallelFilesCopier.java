@@ -0,0 +1,162 @@
+package com.nordnetab.chcp.main.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies list of files concurrently.
+ * Files are collected first, and then copied by the pool of threads, limited to the number of the processor cores,
+ * but not more than 4: flash storage doesn't get faster from more parallel writes.
+ * <p/>
+ * Copy stops on the first failure: tasks, that are still running, are interrupted, and all files,
+ * that were written by the copier, are removed.
+ *
+ * @see FilesUtility#copy(File, File)
+ */
+public class ParallelFilesCopier {
+
+    private static final int MAX_THREADS_COUNT = 4;
+    private static final long TERMINATION_TIMEOUT_IN_SECONDS = 10;
+
+    private final List<CopyTask> tasks;
+
+    /**
+     * Class constructor.
+     */
+    public ParallelFilesCopier() {
+        tasks = new ArrayList<CopyTask>();
+    }
+
+    /**
+     * Add file to copy.
+     * Data is transferred between file channels, so it is not copied through the java heap.
+     *
+     * @param fromFile source file
+     * @param toFile   destination file
+     */
+    public void addFile(final File fromFile, final File toFile) {
+        add(new CopyTask(toFile) {
+            @Override
+            protected long copy() throws IOException {
+                return FilesUtility.copyFile(fromFile, toFile);
+            }
+        });
+    }
+
+    /**
+     * Add custom copy task.
+     *
+     * @param task task, that writes the destination file
+     */
+    public void add(final CopyTask task) {
+        tasks.add(task);
+    }
+
+    /**
+     * Copy all added files.
+     * Folders of the destination files should already exist.
+     *
+     * @return number of the copied bytes
+     * @throws IOException if failed to copy one of the files
+     */
+    public long execute() throws IOException {
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+
+        final AtomicBoolean isCancelled = new AtomicBoolean(false);
+        final int poolSize = Math.min(tasks.size(), Math.min(MAX_THREADS_COUNT, Runtime.getRuntime().availableProcessors()));
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, poolSize));
+        final CompletionService<Long> completionService = new ExecutorCompletionService<Long>(executor);
+
+        long bytesCopied = 0;
+        IOException error = null;
+        try {
+            for (final CopyTask task : tasks) {
+                completionService.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        if (isCancelled.get()) {
+                            return 0L;
+                        }
+
+                        task.isStarted = true;
+                        return task.copy();
+                    }
+                });
+            }
+
+            for (int i = 0, count = tasks.size(); i < count; i++) {
+                bytesCopied += completionService.take().get();
+            }
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            error = cause instanceof IOException ? (IOException) cause : new IOException("Failed to copy files", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = new InterruptedIOException("Copy is interrupted");
+        } finally {
+            isCancelled.set(error != null);
+            executor.shutdownNow();
+        }
+
+        if (error != null) {
+            cleanUp(executor);
+            throw error;
+        }
+
+        return bytesCopied;
+    }
+
+    private void cleanUp(final ExecutorService executor) {
+        // wait for the interrupted tasks, so they won't write files after we remove them
+        try {
+            executor.awaitTermination(TERMINATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (CopyTask task : tasks) {
+            if (task.isStarted) {
+                FilesUtility.delete(task.destination);
+            }
+        }
+    }
+
+    /**
+     * Task to write single destination file.
+     */
+    public abstract static class CopyTask {
+
+        private final File destination;
+        private volatile boolean isStarted;
+
+        /**
+         * Class constructor.
+         *
+         * @param destination file, that is written by the task; removed, if copy fails
+         */
+        protected CopyTask(final File destination) {
+            this.destination = destination;
+        }
+
+        /**
+         * Write the destination file.
+         *
+         * @return number of the written bytes
+         * @throws IOException if failed to write the file
+         */
+        protected abstract long copy() throws IOException;
+    }
+}
@@ -0,0 +1,216 @@
+package com.nordnetab.chcp.main.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+
+/**
+ * Implementation of the xxHash64 algorithm with zero seed.
+ * Hash is returned as 8 bytes in big-endian order, which is the canonical form of the xxHash64 value.
+ *
+ * @see HashAlgorithm#XXHASH64
+ */
+class XxHash64Digest extends MessageDigest {
+
+    private static final long PRIME1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME3 = 0x165667B19E3779F9L;
+    private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+    private static final int STRIPE_LENGTH = 32;
+    private static final int DIGEST_LENGTH = 8;
+
+    private final byte[] stripe;
+    private final byte[] singleByte;
+    private int stripeLength;
+    private long totalLength;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    XxHash64Digest() {
+        super("xxHash64");
+        stripe = new byte[STRIPE_LENGTH];
+        singleByte = new byte[1];
+        engineReset();
+    }
+
+    @Override
+    protected int engineGetDigestLength() {
+        return DIGEST_LENGTH;
+    }
+
+    @Override
+    protected void engineUpdate(byte input) {
+        singleByte[0] = input;
+        engineUpdate(singleByte, 0, 1);
+    }
+
+    @Override
+    protected void engineUpdate(byte[] input, int offset, int length) {
+        totalLength += length;
+
+        // fill the stripe, that is left from the previous update
+        if (stripeLength > 0) {
+            final int count = Math.min(length, STRIPE_LENGTH - stripeLength);
+            System.arraycopy(input, offset, stripe, stripeLength, count);
+            stripeLength += count;
+            offset += count;
+            length -= count;
+            if (stripeLength < STRIPE_LENGTH) {
+                return;
+            }
+            processStripe(stripe, 0);
+            stripeLength = 0;
+        }
+
+        // process full stripes directly from the input
+        while (length >= STRIPE_LENGTH) {
+            processStripe(input, offset);
+            offset += STRIPE_LENGTH;
+            length -= STRIPE_LENGTH;
+        }
+
+        if (length > 0) {
+            System.arraycopy(input, offset, stripe, 0, length);
+            stripeLength = length;
+        }
+    }
+
+    @Override
+    protected void engineUpdate(ByteBuffer input) {
+        // heap buffers are processed through their arrays
+        if (input.hasArray()) {
+            super.engineUpdate(input);
+            return;
+        }
+
+        int length = input.remaining();
+        totalLength += length;
+
+        if (stripeLength > 0) {
+            final int count = Math.min(length, STRIPE_LENGTH - stripeLength);
+            input.get(stripe, stripeLength, count);
+            stripeLength += count;
+            length -= count;
+            if (stripeLength < STRIPE_LENGTH) {
+                return;
+            }
+            processStripe(stripe, 0);
+            stripeLength = 0;
+        }
+
+        // read stripes directly from the direct or mapped memory
+        final ByteOrder order = input.order();
+        input.order(ByteOrder.LITTLE_ENDIAN);
+        while (length >= STRIPE_LENGTH) {
+            v1 = round(v1, input.getLong());
+            v2 = round(v2, input.getLong());
+            v3 = round(v3, input.getLong());
+            v4 = round(v4, input.getLong());
+            length -= STRIPE_LENGTH;
+        }
+        input.order(order);
+
+        if (length > 0) {
+            input.get(stripe, 0, length);
+            stripeLength = length;
+        }
+    }
+
+    @Override
+    protected byte[] engineDigest() {
+        long hash;
+        if (totalLength >= STRIPE_LENGTH) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = mergeRound(hash, v1);
+            hash = mergeRound(hash, v2);
+            hash = mergeRound(hash, v3);
+            hash = mergeRound(hash, v4);
+        } else {
+            hash = PRIME5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        while (offset + 8 <= stripeLength) {
+            hash ^= round(0, readLong(stripe, offset));
+            hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+            offset += 8;
+        }
+        if (offset + 4 <= stripeLength) {
+            hash ^= (readInt(stripe, offset) & 0xFFFFFFFFL) * PRIME1;
+            hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+            offset += 4;
+        }
+        while (offset < stripeLength) {
+            hash ^= (stripe[offset] & 0xFF) * PRIME5;
+            hash = Long.rotateLeft(hash, 11) * PRIME1;
+            offset++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME2;
+        hash ^= hash >>> 29;
+        hash *= PRIME3;
+        hash ^= hash >>> 32;
+
+        final byte[] result = new byte[DIGEST_LENGTH];
+        for (int i = 0; i < DIGEST_LENGTH; i++) {
+            result[i] = (byte) (hash >>> (56 - i * 8));
+        }
+        engineReset();
+
+        return result;
+    }
+
+    @Override
+    protected void engineReset() {
+        v1 = PRIME1 + PRIME2;
+        v2 = PRIME2;
+        v3 = 0;
+        v4 = -PRIME1;
+        stripeLength = 0;
+        totalLength = 0;
+    }
+
+    private void processStripe(final byte[] data, final int offset) {
+        v1 = round(v1, readLong(data, offset));
+        v2 = round(v2, readLong(data, offset + 8));
+        v3 = round(v3, readLong(data, offset + 16));
+        v4 = round(v4, readLong(data, offset + 24));
+    }
+
+    private static long round(long accumulator, final long input) {
+        accumulator += input * PRIME2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+
+        return accumulator * PRIME1;
+    }
+
+    private static long mergeRound(long accumulator, final long value) {
+        accumulator ^= round(0, value);
+
+        return accumulator * PRIME1 + PRIME4;
+    }
+
+    private static long readLong(final byte[] data, final int offset) {
+        return (data[offset] & 0xFFL)
+                | (data[offset + 1] & 0xFFL) << 8
+                | (data[offset + 2] & 0xFFL) << 16
+                | (data[offset + 3] & 0xFFL) << 24
+                | (data[offset + 4] & 0xFFL) << 32
+                | (data[offset + 5] & 0xFFL) << 40
+                | (data[offset + 6] & 0xFFL) << 48
+                | (data[offset + 7] & 0xFFL) << 56;
+    }
+
+    private static int readInt(final byte[] data, final int offset) {
+        return (data[offset] & 0xFF)
+                | (data[offset + 1] & 0xFF) << 8
+                | (data[offset + 2] & 0xFF) << 16
+                | (data[offset + 3] & 0xFF) << 24;
+    }
+}
@@ -0,0 +1,126 @@
+package com.nordnetab.chcp.main;
+
+import org.junit.Assume;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Helper to measure the time of the operation in benchmarks.
+ * Benchmarks are skipped, unless they are enabled with <code>-Dchcp.benchmark=true</code>:
+ * they take much longer than the tests, and their results are only printed, not checked.
+ * <p/>
+ * Operation is executed several times to warm up the JIT, then it's duration is measured
+ * for the number of runs, and median and minimal time are printed.
+ * Memory usage is measured as the number of bytes, that are allocated by the operation on the heap,
+ * and the number of garbage collections, that happened during the runs.
+ */
+public final class Benchmarks {
+
+    /**
+     * Operation, which time is measured.
+     */
+    public interface Operation {
+
+        /**
+         * Execute the operation once.
+         *
+         * @throws Exception if operation failed
+         */
+        void run() throws Exception;
+    }
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Skip the benchmark, if benchmarks are not enabled.
+     */
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks are enabled with -Dchcp.benchmark=true", Boolean.getBoolean("chcp.benchmark"));
+    }
+
+    /**
+     * Measure the time of the operation.
+     *
+     * @param name      name of the measurement, that is printed with the result
+     * @param warmups   how many times operation is executed before the measurement
+     * @param runs      how many times operation is measured
+     * @param operation operation to measure
+     * @return median time of the operation in nanoseconds
+     * @throws Exception if operation failed
+     */
+    public static long measure(final String name, final int warmups, final int runs, final Operation operation) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            operation.run();
+        }
+
+        final long[] durations = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            final long startTime = System.nanoTime();
+            operation.run();
+            durations[i] = System.nanoTime() - startTime;
+        }
+        Arrays.sort(durations);
+
+        final long median = durations[runs / 2];
+        System.out.println(String.format(Locale.US, "%-60s median %10.3f ms, min %10.3f ms, %d runs",
+                name, median / 1e6, durations[0] / 1e6, runs));
+
+        return median;
+    }
+
+    /**
+     * Measure the heap allocations of the operation.
+     * Only allocations of the current thread are counted, so operation should do it's work on the calling thread.
+     *
+     * @param name      name of the measurement, that is printed with the result
+     * @param warmups   how many times operation is executed before the measurement
+     * @param runs      how many times operation is measured
+     * @param operation operation to measure
+     * @return average number of bytes, allocated by a single run
+     * @throws Exception if operation failed
+     */
+    public static long measureAllocations(final String name, final int warmups, final int runs, final Operation operation) throws Exception {
+        for (int i = 0; i < warmups; i++) {
+            operation.run();
+        }
+
+        final com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+        final long startGcCount = collectionCount();
+        final long startGcTime = collectionTime();
+        final long startBytes = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < runs; i++) {
+            operation.run();
+        }
+        final long allocatedBytes = (threadBean.getThreadAllocatedBytes(threadId) - startBytes) / runs;
+        final long gcCount = collectionCount() - startGcCount;
+        final long gcTime = collectionTime() - startGcTime;
+
+        System.out.println(String.format(Locale.US, "%-60s allocated %10.3f MB per run, %d GCs (%d ms), %d runs",
+                name, allocatedBytes / 1048576.0, gcCount, gcTime, runs));
+
+        return allocatedBytes;
+    }
+
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+
+        return count;
+    }
+
+    private static long collectionTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, bean.getCollectionTime());
+        }
+
+        return time;
+    }
+}
@@ -0,0 +1,151 @@
+package com.nordnetab.chcp.main.config;
+
+import com.nordnetab.chcp.main.Benchmarks;
+import com.nordnetab.chcp.main.model.ManifestFile;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark of the {@link ContentManifest#calculateDifference(ContentManifest)} for the manifests
+ * from 100 to 100 000 files. New manifest changes 1% of the files, removes 0.5% and adds 0.5% of the new ones.
+ * <p/>
+ * Measured:
+ * <ul>
+ * <li>original nested loops comparison (up to 10 000 files: for more it takes minutes);</li>
+ * <li>merge of the sorted manifests;</li>
+ * <li>hash map comparison of the unsorted manifests;</li>
+ * <li>merge of the stored binary manifest with the loaded one.</li>
+ * </ul>
+ * Run with <code>-Dchcp.benchmark=true</code>.
+ */
+public class ContentManifestDiffBenchmark {
+
+    private static final int[] SIZES = {100, 1000, 10000, 100000};
+    private static final int MAX_BASELINE_SIZE = 10000;
+
+    @Test
+    public void calculateDifference() throws Exception {
+        Benchmarks.assumeEnabled();
+
+        for (final int size : SIZES) {
+            final Random random = new Random(size);
+            final List<ManifestFile> oldFiles = generateFiles(random, size);
+            final List<ManifestFile> newFiles = changeFiles(random, oldFiles);
+
+            final ContentManifest sortedOld = ContentManifest.fromJson(toJson(oldFiles));
+            final ContentManifest sortedNew = ContentManifest.fromJson(toJson(newFiles));
+
+            Collections.shuffle(oldFiles, random);
+            Collections.shuffle(newFiles, random);
+            final ContentManifest unsortedOld = ContentManifest.fromJson(toJson(oldFiles));
+            final ContentManifest unsortedNew = ContentManifest.fromJson(toJson(newFiles));
+
+            final File binaryFile = File.createTempFile("manifest", ".bin");
+            BinaryManifest.write(sortedOld.getFiles(), binaryFile);
+
+            final int runs = size >= 100000 ? 10 : 30;
+            try {
+                if (size <= MAX_BASELINE_SIZE) {
+                    Benchmarks.measure(size + " files, nested loops", size >= MAX_BASELINE_SIZE ? 1 : 2, size >= MAX_BASELINE_SIZE ? 3 : runs, new Benchmarks.Operation() {
+                        @Override
+                        public void run() {
+                            ContentManifestDiffTest.baselineDifference(unsortedOld.getFiles(), unsortedNew.getFiles());
+                        }
+                    });
+                }
+
+                Benchmarks.measure(size + " files, sorted merge", 5, runs, new Benchmarks.Operation() {
+                    @Override
+                    public void run() {
+                        sortedOld.calculateDifference(sortedNew);
+                    }
+                });
+
+                Benchmarks.measure(size + " files, hash map", 5, runs, new Benchmarks.Operation() {
+                    @Override
+                    public void run() {
+                        unsortedOld.calculateDifference(unsortedNew);
+                    }
+                });
+
+                Benchmarks.measure(size + " files, binary manifest merge", 5, runs, new Benchmarks.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        ContentManifest.fromBinary(BinaryManifest.open(binaryFile)).calculateDifference(sortedNew);
+                    }
+                });
+            } finally {
+                binaryFile.delete();
+            }
+        }
+    }
+
+    // region Manifests
+
+    /**
+     * Generate sorted list of files in the tree of folders, similar to the web project.
+     */
+    static List<ManifestFile> generateFiles(final Random random, final int count) {
+        final List<ManifestFile> files = new ArrayList<ManifestFile>(count);
+        for (int i = 0; i < count; i++) {
+            files.add(new ManifestFile(generatePath(i), randomHash(random)));
+        }
+        Collections.sort(files, new Comparator<ManifestFile>() {
+            @Override
+            public int compare(ManifestFile lhs, ManifestFile rhs) {
+                return lhs.name.compareTo(rhs.name);
+            }
+        });
+
+        return files;
+    }
+
+    private static List<ManifestFile> changeFiles(final Random random, final List<ManifestFile> oldFiles) {
+        final List<ManifestFile> newFiles = new ArrayList<ManifestFile>(oldFiles.size());
+        for (ManifestFile file : oldFiles) {
+            final int dice = random.nextInt(1000);
+            if (dice < 10) {
+                newFiles.add(new ManifestFile(file.name, randomHash(random)));
+            } else if (dice < 15) {
+                continue;
+            } else {
+                newFiles.add(file);
+            }
+
+            if (dice >= 995) {
+                newFiles.add(new ManifestFile(file.name + ".added", randomHash(random)));
+            }
+        }
+
+        return newFiles;
+    }
+
+    private static String generatePath(final int index) {
+        return "assets/module" + (index % 37) + "/locale" + (index % 11) + "/file" + index + ".js";
+    }
+
+    private static String randomHash(final Random random) {
+        return String.format("%016x%016x", random.nextLong(), random.nextLong());
+    }
+
+    static String toJson(final List<ManifestFile> files) {
+        final StringBuilder json = new StringBuilder(files.size() * 100).append('[');
+        for (ManifestFile file : files) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"file\":\"").append(file.name).append("\",\"hash\":\"").append(file.hash).append("\"}");
+        }
+
+        return json.append(']').toString();
+    }
+
+    // endregion
+}
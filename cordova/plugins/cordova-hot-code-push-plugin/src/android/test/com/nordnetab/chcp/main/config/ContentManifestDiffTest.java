@@ -0,0 +1,394 @@
+package com.nordnetab.chcp.main.config;
+
+import com.nordnetab.chcp.main.model.ManifestDiff;
+import com.nordnetab.chcp.main.model.ManifestDiffSink;
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.model.SortedManifestMerge;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link ContentManifest#calculateDifference(ContentManifest)} and it's streaming version.
+ * Every strategy of the comparison should return the same lists, as the original nested loops comparison:
+ * same order of the files and same handling of the repeated paths.
+ */
+public class ContentManifestDiffTest {
+
+    private static final String OLD_SORTED = "["
+            + "{\"file\":\"a/deleted.js\",\"hash\":\"1\"},"
+            + "{\"file\":\"a/same.js\",\"hash\":\"2\"},"
+            + "{\"file\":\"b/changed.css\",\"hash\":\"3\"},"
+            + "{\"file\":\"b/dup.css\",\"hash\":\"4\"},"
+            + "{\"file\":\"b/dup.css\",\"hash\":\"5\"},"
+            + "{\"file\":\"index.html\",\"hash\":\"6\"},"
+            + "{\"file\":\"z/gone.png\",\"hash\":\"7\"},"
+            + "{\"file\":\"z/gone.png\",\"hash\":\"8\"}"
+            + "]";
+
+    private static final String NEW_SORTED = "["
+            + "{\"file\":\"a/added.js\",\"hash\":\"10\"},"
+            + "{\"file\":\"a/added.js\",\"hash\":\"11\"},"
+            + "{\"file\":\"a/same.js\",\"hash\":\"2\"},"
+            + "{\"file\":\"b/changed.css\",\"hash\":\"30\"},"
+            + "{\"file\":\"b/dup.css\",\"hash\":\"4\"},"
+            + "{\"file\":\"b/dup.css\",\"hash\":\"50\"},"
+            + "{\"file\":\"c/new.png\",\"hash\":\"12\"},"
+            + "{\"file\":\"index.html\",\"hash\":\"60\"}"
+            + "]";
+
+    // same entries as in NEW_SORTED, first entries of the duplicates go first
+    private static final String NEW_SHUFFLED = "["
+            + "{\"file\":\"index.html\",\"hash\":\"60\"},"
+            + "{\"file\":\"c/new.png\",\"hash\":\"12\"},"
+            + "{\"file\":\"a/added.js\",\"hash\":\"10\"},"
+            + "{\"file\":\"b/dup.css\",\"hash\":\"4\"},"
+            + "{\"file\":\"b/changed.css\",\"hash\":\"30\"},"
+            + "{\"file\":\"a/same.js\",\"hash\":\"2\"},"
+            + "{\"file\":\"b/dup.css\",\"hash\":\"50\"},"
+            + "{\"file\":\"a/added.js\",\"hash\":\"11\"}"
+            + "]";
+
+    // second entry of b/dup.css differs from the first new one, so it is reported again
+    private static final String EXPECTED_CHANGED = "[b/changed.css:30, b/dup.css:4, index.html:60]";
+    private static final String EXPECTED_DELETED = "[a/deleted.js:1, z/gone.png:7, z/gone.png:8]";
+
+    // paths outside of the basic multilingual plane go after all the others, when compared by code points
+    private static final String OLD_WIDE_CHARS = "["
+            + "{\"file\":\"img/\uFF5E.png\",\"hash\":\"1\"},"
+            + "{\"file\":\"img/\uD83D\uDE00.png\",\"hash\":\"2\"}"
+            + "]";
+
+    private static final String NEW_WIDE_CHARS = "["
+            + "{\"file\":\"img/a.png\",\"hash\":\"3\"},"
+            + "{\"file\":\"img/\uFF5E.png\",\"hash\":\"10\"},"
+            + "{\"file\":\"img/\uD83D\uDE00.png\",\"hash\":\"20\"},"
+            + "{\"file\":\"img/\uD83D\uDE01.png\",\"hash\":\"4\"}"
+            + "]";
+
+    private static final Comparator<ManifestFile> PATH_ORDER = new Comparator<ManifestFile>() {
+        @Override
+        public int compare(ManifestFile lhs, ManifestFile rhs) {
+            return SortedManifestMerge.comparePaths(lhs.name, rhs.name);
+        }
+    };
+
+    @Test
+    public void sortedManifestsKeepRepeatedPaths() {
+        final ContentManifest oldManifest = ContentManifest.fromJson(OLD_SORTED);
+        final ContentManifest newManifest = ContentManifest.fromJson(NEW_SORTED);
+        final ManifestDiff mergeDiff = oldManifest.calculateDifferenceByMerge(newManifest);
+
+        assertNotNull(mergeDiff);
+        for (ManifestDiff diff : new ManifestDiff[]{mergeDiff, oldManifest.calculateDifferenceByIndex(newManifest),
+                oldManifest.calculateDifference(newManifest)}) {
+            assertEquals("[a/added.js:10, a/added.js:11, c/new.png:12]", describe(diff.addedFiles()));
+            assertEquals(EXPECTED_CHANGED, describe(diff.changedFiles()));
+            assertEquals(EXPECTED_DELETED, describe(diff.deletedFiles()));
+            assertSameAsBaseline(oldManifest, newManifest, diff);
+        }
+    }
+
+    @Test
+    public void unsortedManifestKeepsItsOrder() {
+        final ContentManifest oldManifest = ContentManifest.fromJson(OLD_SORTED);
+        final ContentManifest newManifest = ContentManifest.fromJson(NEW_SHUFFLED);
+
+        assertNull(oldManifest.calculateDifferenceByMerge(newManifest));
+        for (ManifestDiff diff : new ManifestDiff[]{oldManifest.calculateDifferenceByIndex(newManifest),
+                oldManifest.calculateDifference(newManifest)}) {
+            assertEquals("[c/new.png:12, a/added.js:10, a/added.js:11]", describe(diff.addedFiles()));
+            assertEquals(EXPECTED_CHANGED, describe(diff.changedFiles()));
+            assertEquals(EXPECTED_DELETED, describe(diff.deletedFiles()));
+            assertSameAsBaseline(oldManifest, newManifest, diff);
+        }
+    }
+
+    @Test
+    public void mergeOrdersPathsByCodePoints() {
+        final ContentManifest oldManifest = ContentManifest.fromJson(OLD_WIDE_CHARS);
+        final ContentManifest newManifest = ContentManifest.fromJson(NEW_WIDE_CHARS);
+        final ManifestDiff mergeDiff = oldManifest.calculateDifferenceByMerge(newManifest);
+
+        assertNotNull(mergeDiff);
+        assertEquals("[img/a.png:3, img/\uD83D\uDE01.png:4]", describe(mergeDiff.addedFiles()));
+        assertEquals("[img/\uFF5E.png:10, img/\uD83D\uDE00.png:20]", describe(mergeDiff.changedFiles()));
+        assertSameAsBaseline(oldManifest, newManifest, mergeDiff);
+        assertSameAsBaseline(oldManifest, newManifest, oldManifest.calculateDifferenceByIndex(newManifest));
+    }
+
+    @Test
+    public void missingNewManifestDeletesAllFiles() {
+        final ContentManifest oldManifest = ContentManifest.fromJson(OLD_SORTED);
+        final String expected = "[a/deleted.js:1, a/same.js:2, b/changed.css:3, b/dup.css:4, b/dup.css:5, "
+                + "index.html:6, z/gone.png:7, z/gone.png:8]";
+
+        assertEquals(expected, describe(oldManifest.calculateDifferenceByMerge(null).deletedFiles()));
+        assertEquals(expected, describe(oldManifest.calculateDifferenceByIndex(null).deletedFiles()));
+    }
+
+    @Test
+    public void randomManifestsMatchBaseline() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final List<ManifestFile> oldFiles = randomFiles(random);
+            final List<ManifestFile> newFiles = randomFiles(random);
+            final boolean isSorted = random.nextBoolean();
+            if (isSorted) {
+                Collections.sort(oldFiles, PATH_ORDER);
+                Collections.sort(newFiles, PATH_ORDER);
+            }
+
+            final ContentManifest oldManifest = ContentManifest.fromJson(toJson(oldFiles));
+            final ContentManifest newManifest = ContentManifest.fromJson(toJson(newFiles));
+            final ManifestDiff mergeDiff = oldManifest.calculateDifferenceByMerge(newManifest);
+            if (isSorted) {
+                assertNotNull(mergeDiff);
+                assertSameAsBaseline(oldManifest, newManifest, mergeDiff);
+            }
+            assertSameAsBaseline(oldManifest, newManifest, oldManifest.calculateDifferenceByIndex(newManifest));
+            assertSameAsBaseline(oldManifest, newManifest, oldManifest.calculateDifference(newManifest));
+        }
+    }
+
+    @Test
+    public void storedManifestMatchesBaseline() throws IOException {
+        final Random random = new Random(7);
+        final File binaryFile = File.createTempFile("manifest", ".bin");
+        try {
+            for (int i = 0; i < 50; i++) {
+                BinaryManifest.write(randomFiles(random, "%032x"), binaryFile);
+                final ContentManifest oldManifest = ContentManifest.fromBinary(BinaryManifest.open(binaryFile));
+                final ContentManifest newManifest = ContentManifest.fromJson(toJson(randomFiles(random, "%032x")));
+
+                assertSameAsBaseline(oldManifest, newManifest, oldManifest.calculateDifference(newManifest));
+            }
+        } finally {
+            binaryFile.delete();
+        }
+    }
+
+    @Test
+    public void streamedManifestMatchesListDiff() throws IOException {
+        final ContentManifest oldManifest = ContentManifest.fromJson(OLD_SORTED);
+        final ManifestDiff streamedDiff = new ManifestDiff();
+
+        assertTrue(oldManifest.calculateDifference(toStream(NEW_SORTED), streamedDiff));
+        assertSameAsListDiff(oldManifest.calculateDifference(ContentManifest.fromJson(NEW_SORTED)), streamedDiff);
+        assertSameAsBaseline(oldManifest, ContentManifest.fromJson(NEW_SORTED), streamedDiff);
+    }
+
+    @Test
+    public void streamedUnsortedManifestIsRejected() throws IOException {
+        final ContentManifest oldManifest = ContentManifest.fromJson(OLD_SORTED);
+
+        assertFalse(oldManifest.calculateDifference(toStream(NEW_SHUFFLED), new ManifestDiff()));
+        assertFalse(ContentManifest.fromJson(NEW_SHUFFLED).calculateDifference(toStream(OLD_SORTED), new ManifestDiff()));
+    }
+
+    @Test
+    public void randomStreamedManifestsMatchListDiff() throws IOException {
+        final Random random = new Random(11);
+        for (int i = 0; i < 500; i++) {
+            final List<ManifestFile> oldFiles = randomFiles(random);
+            final List<ManifestFile> newFiles = randomFiles(random);
+            Collections.sort(oldFiles, PATH_ORDER);
+            Collections.sort(newFiles, PATH_ORDER);
+
+            final ContentManifest oldManifest = ContentManifest.fromJson(toJson(oldFiles));
+            final ContentManifest newManifest = ContentManifest.fromJson(toJson(newFiles));
+            final ManifestDiff streamedDiff = new ManifestDiff();
+
+            assertTrue(oldManifest.calculateDifference(toStream(toJson(newFiles)), streamedDiff));
+            assertSameAsListDiff(oldManifest.calculateDifference(newManifest), streamedDiff);
+            assertSameAsBaseline(oldManifest, newManifest, streamedDiff);
+        }
+    }
+
+    @Test
+    public void streamedFilesAreReportedBeforeManifestIsRead() throws IOException {
+        final List<ManifestFile> newFiles = new ArrayList<ManifestFile>();
+        for (int i = 0; i < 5000; i++) {
+            newFiles.add(new ManifestFile(String.format("www/file%05d.js", i), "1"));
+        }
+        final ContentManifest oldManifest = ContentManifest.fromJson("[]");
+        final byte[] json = toJson(newFiles).getBytes("UTF-8");
+        final CountingInputStream input = new CountingInputStream(json);
+        final long[] bytesReadOnFirstFile = {-1};
+
+        final boolean isCalculated = oldManifest.calculateDifference(input, new ManifestDiffSink() {
+            @Override
+            public void onFileAdded(ManifestFile file) {
+                if (bytesReadOnFirstFile[0] < 0) {
+                    bytesReadOnFirstFile[0] = input.bytesRead;
+                }
+            }
+
+            @Override
+            public void onFileChanged(ManifestFile file) {
+            }
+
+            @Override
+            public void onFileDeleted(ManifestFile file) {
+            }
+        });
+
+        assertTrue(isCalculated);
+        assertTrue(bytesReadOnFirstFile[0] > 0);
+        assertTrue(bytesReadOnFirstFile[0] < json.length / 4);
+        assertEquals(json.length, input.bytesRead);
+    }
+
+    // region Helpers
+
+    private static void assertSameAsListDiff(final ManifestDiff expected, final ManifestDiff diff) {
+        assertEquals(describe(expected.addedFiles()), describe(diff.addedFiles()));
+        assertEquals(describe(expected.changedFiles()), describe(diff.changedFiles()));
+        assertEquals(describe(expected.deletedFiles()), describe(diff.deletedFiles()));
+    }
+
+    private static InputStream toStream(final String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+
+    /**
+     * Stream, that remembers how many bytes were read from it.
+     */
+    private static class CountingInputStream extends ByteArrayInputStream {
+
+        long bytesRead;
+
+        CountingInputStream(final byte[] data) {
+            super(data);
+        }
+
+        @Override
+        public synchronized int read() {
+            final int value = super.read();
+            if (value >= 0) {
+                bytesRead++;
+            }
+
+            return value;
+        }
+
+        @Override
+        public synchronized int read(final byte[] buffer, final int offset, final int length) {
+            final int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                bytesRead += count;
+            }
+
+            return count;
+        }
+    }
+
+    private static void assertSameAsBaseline(final ContentManifest oldManifest, final ContentManifest newManifest,
+                                             final ManifestDiff diff) {
+        final ManifestDiff expected = baselineDifference(oldManifest.getFiles(), newManifest.getFiles());
+
+        assertEquals(describe(expected.addedFiles()), describe(diff.addedFiles()));
+        assertEquals(describe(expected.changedFiles()), describe(diff.changedFiles()));
+        assertEquals(describe(expected.deletedFiles()), describe(diff.deletedFiles()));
+    }
+
+    /**
+     * Comparison, as it was implemented before the linear strategies: every file is looked up
+     * in the other manifest with the nested loop.
+     * Used by the benchmark too.
+     */
+    static ManifestDiff baselineDifference(final List<ManifestFile> oldManifestFiles,
+                                                   final List<ManifestFile> newManifestFiles) {
+        final ManifestDiff diff = new ManifestDiff();
+        final List<ManifestFile> changedFiles = diff.changedFiles();
+        final List<ManifestFile> deletedFiles = diff.deletedFiles();
+        final List<ManifestFile> addedFiles = diff.addedFiles();
+
+        for (ManifestFile oldFile : oldManifestFiles) {
+            boolean isDeleted = true;
+            for (ManifestFile newFile : newManifestFiles) {
+                if (oldFile.name.equals(newFile.name)) {
+                    isDeleted = false;
+                    if (!newFile.hash.equals(oldFile.hash)) {
+                        changedFiles.add(newFile);
+                    }
+
+                    break;
+                }
+            }
+            if (isDeleted) {
+                deletedFiles.add(oldFile);
+            }
+        }
+
+        for (ManifestFile newFile : newManifestFiles) {
+            boolean isFound = false;
+            for (ManifestFile oldFile : oldManifestFiles) {
+                if (newFile.name.equals(oldFile.name)) {
+                    isFound = true;
+                    break;
+                }
+            }
+            if (!isFound) {
+                addedFiles.add(newFile);
+            }
+        }
+
+        return diff;
+    }
+
+    private static List<ManifestFile> randomFiles(final Random random) {
+        return randomFiles(random, "%x");
+    }
+
+    private static List<ManifestFile> randomFiles(final Random random, final String hashFormat) {
+        // small sets of names and hashes, so paths are often shared, repeated and changed
+        final String[] folders = {"", "a/", "a/b/", "b/", "\uD83D\uDE00/"};
+        final int count = random.nextInt(30);
+        final List<ManifestFile> files = new ArrayList<ManifestFile>(count);
+        for (int i = 0; i < count; i++) {
+            final String name = folders[random.nextInt(folders.length)] + "f" + random.nextInt(12) + ".js";
+            files.add(new ManifestFile(name, String.format(hashFormat, random.nextInt(3))));
+        }
+
+        return files;
+    }
+
+    private static String toJson(final List<ManifestFile> files) {
+        final StringBuilder json = new StringBuilder("[");
+        for (ManifestFile file : files) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"file\":\"").append(file.name).append("\",\"hash\":\"").append(file.hash).append("\"}");
+        }
+
+        return json.append(']').toString();
+    }
+
+    private static String describe(final List<ManifestFile> files) {
+        final List<String> entries = new ArrayList<String>(files.size());
+        for (ManifestFile file : files) {
+            entries.add(file.name + ":" + file.hash);
+        }
+
+        return entries.toString();
+    }
+
+    // endregion
+}
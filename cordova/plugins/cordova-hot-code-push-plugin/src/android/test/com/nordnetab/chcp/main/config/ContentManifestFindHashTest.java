@@ -0,0 +1,60 @@
+package com.nordnetab.chcp.main.config;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests for the {@link ContentManifest#findHash(String)} lookup in the list and binary forms of the manifest.
+ */
+public class ContentManifestFindHashTest {
+
+    private static final int FILES_COUNT = 300;
+
+    @Test
+    public void listAndBinaryFormsFindSameHashes() throws IOException {
+        final ContentManifest jsonManifest = ContentManifest.fromJson(manifestJson());
+
+        final File binaryFile = File.createTempFile("manifest", ".bin");
+        try {
+            BinaryManifest.write(jsonManifest.getFiles(), binaryFile);
+            final ContentManifest binaryManifest = ContentManifest.fromBinary(BinaryManifest.open(binaryFile));
+
+            for (int i = 0; i < FILES_COUNT; i++) {
+                final String name = fileName(i);
+                assertEquals(hash(i), jsonManifest.findHash(name));
+                assertEquals(hash(i), binaryManifest.findHash(name));
+            }
+
+            assertNull(jsonManifest.findHash("missing.js"));
+            assertNull(binaryManifest.findHash("missing.js"));
+            assertNull(binaryManifest.findHash(""));
+        } finally {
+            binaryFile.delete();
+        }
+    }
+
+    private static String manifestJson() {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = FILES_COUNT - 1; i >= 0; i--) {
+            json.append("{\"file\":\"").append(fileName(i)).append("\",\"hash\":\"").append(hash(i)).append("\"},");
+        }
+
+        // repeated path: first entry should be used
+        json.append("{\"file\":\"").append(fileName(7)).append("\",\"hash\":\"").append(hash(FILES_COUNT)).append("\"}]");
+
+        return json.toString();
+    }
+
+    private static String fileName(final int index) {
+        return "dir" + (index % 7) + "/file" + index + ".js";
+    }
+
+    private static String hash(final int index) {
+        return String.format("%032x", index * 7919L + 1);
+    }
+}
@@ -0,0 +1,83 @@
+package com.nordnetab.chcp.main.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nordnetab.chcp.main.Benchmarks;
+import com.nordnetab.chcp.main.model.ManifestFile;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark of the manifest parsing for the manifests from 1 000 to 100 000 files.
+ * <p/>
+ * Measured time and heap allocations of:
+ * <ul>
+ * <li>original parsing: stream is read into the string by 1 KB chunks, and then converted into the Jackson tree;</li>
+ * <li>{@link ContentManifest#fromJson(InputStream)}, that reads the entries directly from the stream.</li>
+ * </ul>
+ * Run with <code>-Dchcp.benchmark=true</code>.
+ */
+public class ContentManifestParseBenchmark {
+
+    private static final int[] SIZES = {1000, 10000, 100000};
+
+    @Test
+    public void parseManifest() throws Exception {
+        Benchmarks.assumeEnabled();
+
+        for (final int size : SIZES) {
+            final byte[] json = ContentManifestDiffBenchmark.toJson(ContentManifestDiffBenchmark.generateFiles(new Random(size), size))
+                    .getBytes("UTF-8");
+            final int runs = size >= 100000 ? 10 : 30;
+
+            final Benchmarks.Operation baseline = new Benchmarks.Operation() {
+                @Override
+                public void run() throws Exception {
+                    baselineParse(new ByteArrayInputStream(json));
+                }
+            };
+            final Benchmarks.Operation streaming = new Benchmarks.Operation() {
+                @Override
+                public void run() throws Exception {
+                    ContentManifest.fromJson(new ByteArrayInputStream(json));
+                }
+            };
+
+            Benchmarks.measure(size + " files, string and tree", 5, runs, baseline);
+            Benchmarks.measureAllocations(size + " files, string and tree", 1, runs, baseline);
+            Benchmarks.measure(size + " files, streaming", 5, runs, streaming);
+            Benchmarks.measureAllocations(size + " files, streaming", 1, runs, streaming);
+        }
+    }
+
+    /**
+     * Original parsing of the loaded manifest: JsonDownloader reads the stream into the string,
+     * and ContentManifest builds the Jackson tree from it with the new ObjectMapper.
+     */
+    private static List<ManifestFile> baselineParse(final InputStream input) throws Exception {
+        final StringBuilder jsonContent = new StringBuilder();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+        final char[] buffer = new char[1024];
+        int bytesRead;
+        while ((bytesRead = reader.read(buffer)) != -1) {
+            jsonContent.append(buffer, 0, bytesRead);
+        }
+        reader.close();
+
+        final List<ManifestFile> files = new ArrayList<ManifestFile>();
+        final JsonNode filesListNode = new ObjectMapper().readTree(jsonContent.toString());
+        for (JsonNode fileNode : filesListNode) {
+            files.add(new ManifestFile(fileNode.get("file").asText(), fileNode.get("hash").asText()));
+        }
+
+        return files;
+    }
+}
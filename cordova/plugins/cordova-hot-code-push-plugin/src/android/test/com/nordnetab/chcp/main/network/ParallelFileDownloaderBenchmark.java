@@ -0,0 +1,162 @@
+package com.nordnetab.chcp.main.network;
+
+import com.nordnetab.chcp.main.Benchmarks;
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.utils.Paths;
+import com.nordnetab.chcp.main.utils.URLUtility;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Benchmark of the {@link ParallelFileDownloader} against the original sequential download of the files.
+ * Files of 16 KB are served by the local HTTP server, that waits before each response to simulate
+ * the network latency of 0, 20 and 50 ms. Release changes from 10 to 400 files.
+ * <p/>
+ * Measured wall-clock time of:
+ * <ul>
+ * <li>original loop, that loads files one by one with {@link FileDownloader#download(String, String, String)};</li>
+ * <li>{@link ParallelFileDownloader} with the default limits.</li>
+ * </ul>
+ * Run with <code>-Dchcp.benchmark=true</code>.
+ */
+public class ParallelFileDownloaderBenchmark {
+
+    private static final int[] LATENCIES = {0, 20, 50};
+    private static final int[] FILE_COUNTS = {10, 100, 400};
+    private static final int FILE_SIZE = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final Map<String, byte[]> serverFiles = new HashMap<String, byte[]>();
+    private volatile long responseDelay;
+
+    @Before
+    public void startServer() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void downloadFiles() throws Exception {
+        Benchmarks.assumeEnabled();
+
+        final String contentUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/www";
+        for (final int latency : LATENCIES) {
+            responseDelay = latency;
+            for (final int count : FILE_COUNTS) {
+                final List<ManifestFile> files = publishFiles(count);
+
+                Benchmarks.measure(count + " files, " + latency + " ms latency, sequential", 1, 3, new Benchmarks.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        final String folder = temporaryFolder.newFolder().getAbsolutePath();
+                        for (ManifestFile file : files) {
+                            FileDownloader.download(URLUtility.construct(contentUrl, file.name), Paths.get(folder, file.name), file.hash);
+                        }
+                    }
+                });
+
+                Benchmarks.measure(count + " files, " + latency + " ms latency, parallel", 1, 3, new Benchmarks.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        final String folder = temporaryFolder.newFolder().getAbsolutePath();
+                        new ParallelFileDownloader().downloadFiles(folder, contentUrl, files);
+                    }
+                });
+            }
+        }
+    }
+
+    // region Server
+
+    private List<ManifestFile> publishFiles(final int count) throws Exception {
+        final Random random = new Random(count);
+        final MessageDigest md5 = MessageDigest.getInstance("MD5");
+        final List<ManifestFile> files = new ArrayList<ManifestFile>(count);
+        for (int i = 0; i < count; i++) {
+            final byte[] content = new byte[FILE_SIZE];
+            random.nextBytes(content);
+
+            final String name = "release" + count + "/file" + i + ".js";
+            synchronized (serverFiles) {
+                serverFiles.put(name, content);
+            }
+            files.add(new ManifestFile(name, toHex(md5.digest(content))));
+        }
+
+        return files;
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException {
+        final String name = exchange.getRequestURI().getPath().substring("/www/".length());
+        final byte[] content;
+        synchronized (serverFiles) {
+            content = serverFiles.get(name);
+        }
+
+        try {
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            Thread.sleep(responseDelay);
+
+            exchange.sendResponseHeaders(200, content.length);
+            final OutputStream output = exchange.getResponseBody();
+            output.write(content);
+            output.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String toHex(final byte[] digest) {
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+
+        return hex.toString();
+    }
+
+    // endregion
+}
@@ -0,0 +1,319 @@
+package com.nordnetab.chcp.main.network;
+
+import com.nordnetab.chcp.main.model.ManifestFile;
+import com.nordnetab.chcp.main.utils.HashAlgorithm;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the {@link ParallelFileDownloader}.
+ * Files are served by the local HTTP server, which records every request and the number of simultaneous
+ * requests to each host.
+ */
+public class ParallelFileDownloaderTest {
+
+    private static final int FILE_SIZE = 16 * 1024;
+    private static final long SLOW_RESPONSE_DELAY = 150;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private final Map<String, byte[]> serverFiles = Collections.synchronizedMap(new HashMap<String, byte[]>());
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<String, String> rangeHeaders = Collections.synchronizedMap(new HashMap<String, String>());
+    private final Map<String, AtomicInteger> activeRequests = new HashMap<String, AtomicInteger>();
+    private final Map<String, Integer> maxActiveRequests = new HashMap<String, Integer>();
+    private volatile long responseDelay;
+
+    @Before
+    public void startServer() throws IOException {
+        serverExecutor = Executors.newCachedThreadPool();
+        server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.setExecutor(serverExecutor);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void downloadsAreLimitedPerHost() throws Exception {
+        final List<ManifestFile> files = publishFiles("limit", 8);
+        responseDelay = SLOW_RESPONSE_DELAY;
+
+        final File folder = temporaryFolder.newFolder();
+        new ParallelFileDownloader(6, 2).downloadFiles(folder.getAbsolutePath(), serverUrl("127.0.0.1"), files);
+
+        assertEquals(2, maxActiveRequests("127.0.0.1"));
+        assertFilesLoaded(folder, files);
+    }
+
+    @Test
+    public void hostsHaveSeparateLimits() throws Exception {
+        final List<ManifestFile> firstHostFiles = publishFiles("first", 6);
+        final List<ManifestFile> secondHostFiles = publishFiles("second", 6);
+        responseDelay = SLOW_RESPONSE_DELAY;
+
+        final ParallelFileDownloader downloader = new ParallelFileDownloader(6, 2);
+        final File folder = temporaryFolder.newFolder();
+        final IOException[] secondHostError = new IOException[1];
+        final Thread secondHostThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    downloader.downloadFiles(folder.getAbsolutePath(), serverUrl("localhost"), secondHostFiles);
+                } catch (IOException e) {
+                    secondHostError[0] = e;
+                }
+            }
+        });
+        secondHostThread.start();
+        downloader.downloadFiles(folder.getAbsolutePath(), serverUrl("127.0.0.1"), firstHostFiles);
+        secondHostThread.join();
+
+        assertNull(secondHostError[0]);
+        assertEquals(2, maxActiveRequests("127.0.0.1"));
+        assertEquals(2, maxActiveRequests("localhost"));
+        assertFilesLoaded(folder, firstHostFiles);
+        assertFilesLoaded(folder, secondHostFiles);
+    }
+
+    @Test
+    public void firstFailureCancelsOtherDownloads() throws Exception {
+        final List<ManifestFile> files = new ArrayList<ManifestFile>();
+        files.add(new ManifestFile("missing.js", "0"));
+        files.addAll(publishFiles("slow", 20));
+        responseDelay = SLOW_RESPONSE_DELAY;
+
+        final File folder = temporaryFolder.newFolder();
+        final long startTime = System.currentTimeMillis();
+        try {
+            new ParallelFileDownloader(2, 2).downloadFiles(folder.getAbsolutePath(), serverUrl("127.0.0.1"), files);
+            fail("Download of the missing file should fail");
+        } catch (IOException e) {
+            // expected
+        }
+        final long duration = System.currentTimeMillis() - startTime;
+
+        // only the files, that were started together with the failed one, are requested
+        assertTrue("Requests after the failure: " + requests, requests.size() <= 3);
+        assertTrue("Download took " + duration + " ms", duration < SLOW_RESPONSE_DELAY * files.size() / 2);
+    }
+
+    @Test
+    public void journalSkipsLoadedFilesAndResumesStartedOnes() throws Exception {
+        final List<ManifestFile> files = publishFiles("resume", 3);
+        final ManifestFile loadedFile = files.get(0);
+        final ManifestFile startedFile = files.get(1);
+        final ManifestFile newFile = files.get(2);
+
+        final File folder = temporaryFolder.newFolder();
+        final DownloadJournal journal = DownloadJournal.openInFolder(folder.getAbsolutePath(), HashAlgorithm.MD5);
+        try {
+            writeFile(new File(folder, loadedFile.name), serverFiles.get(loadedFile.name), FILE_SIZE);
+            journal.markStarted(loadedFile);
+            journal.markCompleted(loadedFile);
+
+            final int loadedPartSize = FILE_SIZE / 3;
+            writeFile(new File(folder, startedFile.name), serverFiles.get(startedFile.name), loadedPartSize);
+            journal.markStarted(startedFile);
+
+            new ParallelFileDownloader().downloadFiles(folder.getAbsolutePath(), serverUrl("127.0.0.1"), files, journal);
+
+            assertFalse(requests.contains(loadedFile.name));
+            assertEquals("bytes=" + loadedPartSize + "-", rangeHeaders.get(startedFile.name));
+            assertTrue(requests.contains(newFile.name));
+            assertNull(rangeHeaders.get(newFile.name));
+            assertFilesLoaded(folder, files);
+            for (ManifestFile file : files) {
+                assertTrue(journal.isCompleted(file));
+            }
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void repeatedPathIsLoadedOnce() throws Exception {
+        final List<ManifestFile> files = publishFiles("repeated", 2);
+        files.add(files.get(0));
+
+        final File folder = temporaryFolder.newFolder();
+        new ParallelFileDownloader().downloadFiles(folder.getAbsolutePath(), serverUrl("127.0.0.1"), files);
+
+        assertEquals(2, requests.size());
+        assertFilesLoaded(folder, files);
+    }
+
+    // region Helpers
+
+    private List<ManifestFile> publishFiles(final String prefix, final int count) throws Exception {
+        final Random random = new Random(prefix.hashCode());
+        final List<ManifestFile> files = new ArrayList<ManifestFile>(count);
+        for (int i = 0; i < count; i++) {
+            final byte[] content = new byte[FILE_SIZE];
+            random.nextBytes(content);
+
+            final String name = prefix + "/file" + i + ".js";
+            serverFiles.put(name, content);
+            files.add(new ManifestFile(name, md5(content)));
+        }
+
+        return files;
+    }
+
+    private String serverUrl(final String host) {
+        return "http://" + host + ":" + server.getAddress().getPort() + "/www";
+    }
+
+    private int maxActiveRequests(final String host) {
+        synchronized (activeRequests) {
+            final Integer value = maxActiveRequests.get(host + ":" + server.getAddress().getPort());
+            return value != null ? value : 0;
+        }
+    }
+
+    private void serve(final HttpExchange exchange) throws IOException {
+        final String host = exchange.getRequestHeaders().getFirst("Host");
+        final String name = exchange.getRequestURI().getPath().substring("/www/".length());
+        final String range = exchange.getRequestHeaders().getFirst("Range");
+        requests.add(name);
+        if (range != null) {
+            rangeHeaders.put(name, range);
+        }
+
+        final AtomicInteger hostRequests;
+        synchronized (activeRequests) {
+            AtomicInteger counter = activeRequests.get(host);
+            if (counter == null) {
+                counter = new AtomicInteger();
+                activeRequests.put(host, counter);
+            }
+            hostRequests = counter;
+
+            final int active = hostRequests.incrementAndGet();
+            final Integer max = maxActiveRequests.get(host);
+            if (max == null || active > max) {
+                maxActiveRequests.put(host, active);
+            }
+        }
+
+        try {
+            final byte[] content = serverFiles.get(name);
+            if (content == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            Thread.sleep(responseDelay);
+
+            int offset = 0;
+            if (range != null) {
+                offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                exchange.getResponseHeaders().set("Content-Range", "bytes " + offset + "-" + (content.length - 1) + "/" + content.length);
+                exchange.sendResponseHeaders(206, content.length - offset);
+            } else {
+                exchange.sendResponseHeaders(200, content.length);
+            }
+
+            final OutputStream output = exchange.getResponseBody();
+            output.write(content, offset, content.length - offset);
+            output.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (activeRequests) {
+                hostRequests.decrementAndGet();
+            }
+            exchange.close();
+        }
+    }
+
+    private void assertFilesLoaded(final File folder, final List<ManifestFile> files) throws IOException {
+        for (ManifestFile file : files) {
+            assertArrayEquals(file.name, serverFiles.get(file.name), readFile(new File(folder, file.name)));
+        }
+    }
+
+    private static void writeFile(final File file, final byte[] content, final int length) throws IOException {
+        file.getParentFile().mkdirs();
+        final OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content, 0, length);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static byte[] readFile(final File file) throws IOException {
+        final byte[] content = new byte[(int) file.length()];
+        final InputStream input = new FileInputStream(file);
+        try {
+            int offset = 0;
+            int count;
+            while (offset < content.length && (count = input.read(content, offset, content.length - offset)) != -1) {
+                offset += count;
+            }
+        } finally {
+            input.close();
+        }
+
+        return content;
+    }
+
+    private static String md5(final byte[] content) throws Exception {
+        final byte[] digest = MessageDigest.getInstance("MD5").digest(content);
+        final StringBuilder hex = new StringBuilder();
+        for (byte b : digest) {
+            hex.append(String.format("%02x", b & 0xff));
+        }
+
+        return hex.toString();
+    }
+
+    // endregion
+}
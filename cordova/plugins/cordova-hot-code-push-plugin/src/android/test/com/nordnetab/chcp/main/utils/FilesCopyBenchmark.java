@@ -0,0 +1,139 @@
+package com.nordnetab.chcp.main.utils;
+
+import com.nordnetab.chcp.main.Benchmarks;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmark of the {@link FilesUtility#copy(File, File)} for the release folders of two kinds:
+ * 1000 files of 16 KB in 20 folders, like the web project with a lot of small modules, and 20 files of 4 MB.
+ * <p/>
+ * Measured:
+ * <ul>
+ * <li>original recursive copy, that streams every file through the 8 KB heap buffer;</li>
+ * <li>{@link FilesUtility#copy(File, File)}, that walks the tree once and copies files concurrently
+ * between the file channels.</li>
+ * </ul>
+ * Copies are removed after the measurement, so the time doesn't include the removal.
+ * Run with <code>-Dchcp.benchmark=true</code>.
+ */
+public class FilesCopyBenchmark {
+
+    private static final int FOLDERS_COUNT = 20;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void copySmallFiles() throws Exception {
+        Benchmarks.assumeEnabled();
+
+        measureCopy(createTree(1000, 16 * 1024), "1000 x 16 KB");
+    }
+
+    @Test
+    public void copyLargeFiles() throws Exception {
+        Benchmarks.assumeEnabled();
+
+        measureCopy(createTree(20, 4 * 1024 * 1024), "20 x 4 MB");
+    }
+
+    private void measureCopy(final File src, final String name) throws Exception {
+        final List<File> copies = new ArrayList<File>();
+        try {
+            Benchmarks.measure(name + ", original stream copy", 3, 21, new Benchmarks.Operation() {
+                @Override
+                public void run() throws Exception {
+                    final File dst = new File(temporaryFolder.getRoot(), "copy" + copies.size());
+                    copies.add(dst);
+                    baselineCopy(src, dst);
+                }
+            });
+        } finally {
+            deleteAll(copies);
+        }
+
+        try {
+            Benchmarks.measure(name + ", channel copy", 3, 21, new Benchmarks.Operation() {
+                @Override
+                public void run() throws Exception {
+                    final File dst = new File(temporaryFolder.getRoot(), "copy" + copies.size());
+                    copies.add(dst);
+                    FilesUtility.copy(src, dst);
+                }
+            });
+        } finally {
+            deleteAll(copies);
+        }
+    }
+
+    // region Helpers
+
+    private File createTree(final int filesCount, final int fileSize) throws Exception {
+        final File root = temporaryFolder.newFolder();
+        final byte[] content = new byte[fileSize];
+        final Random random = new Random(filesCount);
+        for (int i = 0; i < filesCount; i++) {
+            random.nextBytes(content);
+
+            final File folder = new File(root, "module" + (i % FOLDERS_COUNT));
+            folder.mkdirs();
+            final OutputStream out = new FileOutputStream(new File(folder, "file" + i + ".js"));
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+        }
+
+        return root;
+    }
+
+    private static void deleteAll(final List<File> files) {
+        for (File file : files) {
+            FilesUtility.delete(file);
+        }
+        files.clear();
+    }
+
+    /**
+     * Original FilesUtility.copy.
+     */
+    private static void baselineCopy(final File src, final File dst) throws Exception {
+        if (src.isDirectory()) {
+            FilesUtility.ensureDirectoryExists(dst);
+
+            String[] filesList = src.list();
+            for (String file : filesList) {
+                baselineCopy(new File(src, file), new File(dst, file));
+            }
+        } else {
+            InputStream in = new BufferedInputStream(new FileInputStream(src));
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(dst));
+
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = in.read(buf)) > 0) {
+                out.write(buf, 0, len);
+            }
+
+            in.close();
+            out.close();
+        }
+    }
+
+    // endregion
+}
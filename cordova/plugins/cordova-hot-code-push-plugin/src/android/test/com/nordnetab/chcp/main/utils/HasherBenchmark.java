@@ -0,0 +1,136 @@
+package com.nordnetab.chcp.main.utils;
+
+import com.nordnetab.chcp.main.Benchmarks;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Random;
+
+/**
+ * Benchmark of the {@link Hasher} for the asset sizes from 1 KB to 4 MB.
+ * Every run hashes 16 MB of data: the same buffer is hashed as many times, as needed.
+ * <p/>
+ * Measured:
+ * <ul>
+ * <li>original MD5 helper: new MessageDigest for every file, hex string through the BigInteger and String.format;</li>
+ * <li>{@link Hasher} with every {@link HashAlgorithm}, and the comparison of the digest with the expected hex string;</li>
+ * <li>time and allocations of the hex encoding alone.</li>
+ * </ul>
+ * Run with <code>-Dchcp.benchmark=true</code>.
+ */
+public class HasherBenchmark {
+
+    private static final int[] SIZES = {1024, 16 * 1024, 256 * 1024, 4 * 1024 * 1024};
+    private static final int DATA_PER_RUN = 16 * 1024 * 1024;
+    private static final int DIGESTS_COUNT = 100000;
+
+    @Test
+    public void hashData() throws Exception {
+        Benchmarks.assumeEnabled();
+
+        for (final int size : SIZES) {
+            final byte[] data = new byte[size];
+            new Random(size).nextBytes(data);
+            final int count = DATA_PER_RUN / size;
+            final String name = (size / 1024) + " KB x " + count;
+
+            Benchmarks.measure(name + ", original MD5", 3, 15, new Benchmarks.Operation() {
+                @Override
+                public void run() throws Exception {
+                    for (int i = 0; i < count; i++) {
+                        baselineHash(data);
+                    }
+                }
+            });
+
+            for (final HashAlgorithm algorithm : HashAlgorithm.values()) {
+                final Hasher referenceHasher = algorithm.newHasher();
+                referenceHasher.write(data, data.length);
+                final String expectedHash = referenceHasher.calculateHash();
+
+                Benchmarks.measure(name + ", " + algorithm, 3, 15, new Benchmarks.Operation() {
+                    @Override
+                    public void run() throws Exception {
+                        for (int i = 0; i < count; i++) {
+                            final Hasher hasher = algorithm.newHasher();
+                            hasher.write(data, data.length);
+                            if (!hasher.matches(expectedHash)) {
+                                throw new IllegalStateException("Hash mismatch");
+                            }
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void encodeHex() throws Exception {
+        Benchmarks.assumeEnabled();
+
+        final byte[][] digests = new byte[DIGESTS_COUNT][16];
+        final Random random = new Random(DIGESTS_COUNT);
+        for (byte[] digest : digests) {
+            random.nextBytes(digest);
+        }
+        final String[] hashes = new String[DIGESTS_COUNT];
+        for (int i = 0; i < DIGESTS_COUNT; i++) {
+            hashes[i] = Hex.encode(digests[i]);
+        }
+
+        final Benchmarks.Operation baseline = new Benchmarks.Operation() {
+            @Override
+            public void run() {
+                for (byte[] digest : digests) {
+                    baselineHex(digest);
+                }
+            }
+        };
+        final Benchmarks.Operation encode = new Benchmarks.Operation() {
+            @Override
+            public void run() {
+                for (byte[] digest : digests) {
+                    Hex.encode(digest);
+                }
+            }
+        };
+        final Benchmarks.Operation compare = new Benchmarks.Operation() {
+            @Override
+            public void run() {
+                for (int i = 0; i < DIGESTS_COUNT; i++) {
+                    if (!Hex.matches(digests[i], hashes[i])) {
+                        throw new IllegalStateException("Hash mismatch");
+                    }
+                }
+            }
+        };
+
+        final String name = DIGESTS_COUNT + " MD5 digests";
+        Benchmarks.measure(name + ", BigInteger and String.format", 5, 15, baseline);
+        Benchmarks.measureAllocations(name + ", BigInteger and String.format", 1, 15, baseline);
+        Benchmarks.measure(name + ", Hex.encode", 5, 15, encode);
+        Benchmarks.measureAllocations(name + ", Hex.encode", 1, 15, encode);
+        Benchmarks.measure(name + ", Hex.matches", 5, 15, compare);
+        Benchmarks.measureAllocations(name + ", Hex.matches", 1, 15, compare);
+    }
+
+    // region Original MD5 helper
+
+    private static String baselineHash(final byte[] data) throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        digest.update(data, 0, data.length);
+
+        return baselineHex(digest.digest());
+    }
+
+    private static String baselineHex(final byte[] md5sum) {
+        BigInteger bigInt = new BigInteger(1, md5sum);
+        String output = bigInt.toString(16);
+
+        return String.format("%32s", output).replace(' ', '0');
+    }
+
+    // endregion
+}
@@ -171,7 +171,8 @@ var chcp = {
     CANT_DOWNLOAD_UPDATE_WHILE_INSTALLATION_IN_PROGRESS: -15,
     INSTALLATION_ALREADY_IN_PROGRESS: -16,
     DOWNLOAD_ALREADY_IN_PROGRESS: -17,
-    ASSETS_FOLDER_IN_NOT_YET_INSTALLED: -18
+    ASSETS_FOLDER_IN_NOT_YET_INSTALLED: -18,
+    LOCAL_VERSION_OF_RELEASE_IS_INCOMPLETE: -19
   },
 
   /**